@@ -0,0 +1,95 @@
+package cornflakes.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cornflakes.compiler.ClassData;
+import cornflakes.compiler.Compiler;
+import cornflakes.compiler.MainCompiler;
+import cornflakes.compiler.PhaseScheduler;
+
+/**
+ * Compiles a generated corpus: the head of a single file, a single file
+ * through every phase and the whole corpus through every phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompilerBenchmark {
+	@Param({ "16", "64" })
+	public int classes;
+
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	private Path directory;
+	private List<File> files;
+	private String[] firstSource;
+	private PhaseScheduler scheduler;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("cornflakes-bench");
+		files = new ArrayList<>();
+		for (Path path : new CorpusGenerator(classes, 20, 12).write(directory)) {
+			files.add(path.toFile());
+		}
+
+		firstSource = Compiler.preprocess(new String(Files.readAllBytes(files.get(0).toPath())));
+		scheduler = new PhaseScheduler(parallelism);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		scheduler.shutdown();
+
+		List<Path> paths = new ArrayList<>();
+		Files.walk(directory).forEach(paths::add);
+		Collections.sort(paths, Comparator.reverseOrder());
+		for (Path path : paths) {
+			Files.delete(path);
+		}
+	}
+
+	@Benchmark
+	public ClassData compileHead() {
+		Compiler.reset();
+		return Compiler.compile(files.get(0).getName(), firstSource);
+	}
+
+	@Benchmark
+	public List<ClassData> compileFile() {
+		Compiler.reset();
+		return MainCompiler.compile(scheduler, files.subList(0, 1));
+	}
+
+	@Benchmark
+	public List<ClassData> compileCorpus() {
+		Compiler.reset();
+		return MainCompiler.compile(scheduler, files);
+	}
+}
@@ -0,0 +1,108 @@
+package cornflakes.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a synthetic corpus of Cornflakes sources. Every class calls into the
+ * class generated before it, so a build has to resolve classes across files,
+ * and every function mixes declarations, arithmetic, conditions and loops.
+ */
+public class CorpusGenerator {
+	private int classes;
+	private int functions;
+	private int statements;
+
+	public CorpusGenerator(int classes, int functions, int statements) {
+		this.classes = classes;
+		this.functions = functions;
+		this.statements = statements;
+	}
+
+	/**
+	 * Generates a corpus: <code>CorpusGenerator &lt;directory&gt; [classes]
+	 * [functions] [statements]</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Expecting an output directory");
+		}
+
+		int classes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int functions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int statements = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		List<Path> files = new CorpusGenerator(classes, functions, statements).write(Paths.get(args[0]));
+		System.out.println("Generated " + files.size() + " files.");
+	}
+
+	public List<Path> write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+
+		List<Path> files = new ArrayList<>();
+		for (int i = 0; i < classes; i++) {
+			Path file = directory.resolve(className(i) + ".cf");
+			Files.write(file, generateClass(i).getBytes("UTF-8"));
+			files.add(file);
+		}
+		return files;
+	}
+
+	public String generateClass(int index) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("package bench;\n");
+		builder.append("public class ").append(className(index)).append(";\n\n");
+		builder.append("public static var counter: i32 = ").append(index).append(";\n\n");
+
+		for (int i = 0; i < functions; i++) {
+			builder.append("public static func f").append(i).append("(a: i32, b: i32) -> i32 {\n");
+			builder.append("\tvar x: i32 = a + b;\n");
+
+			for (int j = 0; j < statements; j++) {
+				switch (j % 4) {
+					case 0:
+						builder.append("\tx = x + a * ").append(j + 1).append(" - b;\n");
+						break;
+					case 1:
+						builder.append("\tif x > ").append(j * 10).append(" {\n");
+						builder.append("\t\tx = x - ").append(j).append(";\n");
+						builder.append("\t}\n");
+						break;
+					case 2:
+						builder.append("\twhile x < ").append(j * 100).append(" {\n");
+						builder.append("\t\tx = x + b + 1;\n");
+						builder.append("\t}\n");
+						break;
+					default:
+						builder.append("\tvar v").append(j).append(": i32 = x * ").append(j).append(" + counter;\n");
+						break;
+				}
+			}
+
+			if (index > 0) {
+				builder.append("\tx = ").append(className(index - 1)).append(".f").append(i).append("(x, b);\n");
+			}
+			builder.append("\treturn x;\n");
+			builder.append("}\n\n");
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Class names may not contain digits, so the index is spelled with
+	 * letters: GenA, GenB, ..., GenZ, GenBA, ...
+	 */
+	public static String className(int index) {
+		StringBuilder name = new StringBuilder();
+		do {
+			name.insert(0, (char) ('A' + index % 26));
+			index /= 26;
+		} while (index > 0);
+		return "Gen" + name;
+	}
+}
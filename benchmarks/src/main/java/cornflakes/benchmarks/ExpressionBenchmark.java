@@ -0,0 +1,118 @@
+package cornflakes.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cornflakes.compiler.Block;
+import cornflakes.compiler.BooleanExpressionCompiler;
+import cornflakes.compiler.ClassData;
+import cornflakes.compiler.ExpressionCompiler;
+import cornflakes.compiler.MathExpressionCompiler;
+import cornflakes.compiler.MethodData;
+
+/**
+ * Compiles a single synthetic expression whose number of operators or member
+ * accesses grows with {@link #depth}, into a fresh method each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+	@Param({ "1", "4", "16", "64" })
+	public int depth;
+
+	private ClassData data;
+	private String math;
+	private String bool;
+	private String reference;
+
+	@Setup
+	public void setup() {
+		data = new ClassData();
+		data.setClassName("bench/Expressions");
+		data.setSimpleClassName("Expressions");
+		data.setPackageName("bench");
+		data.setParentName("java/lang/Object");
+		data.setInterfaces(new String[0]);
+		ClassData.registerCornflakesClass(data);
+
+		StringBuilder math = new StringBuilder("a");
+		StringBuilder reference = new StringBuilder("s");
+		for (int i = 0; i < depth; i++) {
+			math.append(i % 2 == 0 ? " + b * a" : " - b");
+			reference.append(".trim()");
+		}
+
+		// conditions are split at the comparison before the arithmetic, so
+		// the comparison grows through its operand
+		this.math = math.toString();
+		this.bool = math + " < b";
+		this.reference = reference.toString();
+	}
+
+	@Benchmark
+	public MethodNode mathExpression() {
+		MethodNode node = new MethodNode();
+		MethodData method = method();
+		new MathExpressionCompiler(method, false, true).compile(data, node, block(node, method), math,
+				new String[] { math });
+		return node;
+	}
+
+	@Benchmark
+	public MethodNode booleanExpression() {
+		MethodNode node = new MethodNode();
+		MethodData method = method();
+		new BooleanExpressionCompiler(method, new Label(), true).compile(data, node, block(node, method), bool,
+				new String[] { bool });
+		return node;
+	}
+
+	@Benchmark
+	public MethodNode referenceExpression() {
+		MethodNode node = new MethodNode();
+		MethodData method = method();
+		new ExpressionCompiler(true, method).compile(data, node, block(node, method), reference,
+				new String[] { reference });
+		return node;
+	}
+
+	private static MethodData method() {
+		Map<String, String> parameters = new LinkedHashMap<>();
+		parameters.put("a", "I");
+		parameters.put("b", "I");
+		parameters.put("s", "Ljava/lang/String;");
+
+		MethodData method = new MethodData("run", "V", false, Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+		method.setParameters(parameters);
+		return method;
+	}
+
+	private static Block block(MethodNode node, MethodData method) {
+		Label start = new Label();
+		node.visitLabel(start);
+
+		Block block = new Block(0, start, new Label());
+		method.setBlock(block);
+		return block;
+	}
+}
@@ -1,5 +1,6 @@
 package cornflakes.compiler;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,18 +17,46 @@ public class AfterCompile {
 	}
 	
 	public void finish() {
-		List<PostCompiler> clone = new ArrayList<>(compilers);
-		
-		compilers.clear();
-		
+		List<PostCompiler> clone;
+		synchronized (this) {
+			clone = new ArrayList<>(compilers);
+			compilers.clear();
+		}
+
 		for(PostCompiler compiler : clone) {
 			compiler.write();
 		}
 	}
 	
-	public void end() {
+	/**
+	 * Finishes the class and hands it to the output of the compiler; without
+	 * an output the bytes are kept in the class data. The class writer is
+	 * released afterwards, as the class data outlives the compilation.
+	 */
+	public void end() throws IOException {
 		cw.visitEnd();
-		data.setByteCode(cw.toByteArray());		
+		byte[] bytes = cw.toByteArray();
+		cw = null;
+		data.setClassWriter(null);
+		if (Compiler.isVerify()) {
+			BytecodeVerifier.verify(bytes);
+		}
+		CompileMetrics.emitted(data.getClassName(), bytes.length);
+
+		ClassOutput output = Compiler.getOutput();
+		if (output != null) {
+			output.write(data.getClassName(), bytes);
+		} else {
+			data.setByteCode(bytes);
+		}
+	}
+
+	public ClassData getData() {
+		return data;
+	}
+
+	public synchronized void addCompiler(PostCompiler compiler) {
+		compilers.add(compiler);
 	}
 
 	public List<PostCompiler> getCompilers() {
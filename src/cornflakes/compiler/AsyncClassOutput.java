@@ -0,0 +1,82 @@
+package cornflakes.compiler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands classes to another output on background I/O threads, so the compiler
+ * threads do not wait for the disk. If a class is written again before its
+ * previous bytes reached the output, only the newest bytes are written.
+ */
+public class AsyncClassOutput implements ClassOutput {
+	private ClassOutput output;
+	private ExecutorService executor;
+	private Map<String, byte[]> pending = new ConcurrentHashMap<>();
+	private Map<String, Object> locks = new ConcurrentHashMap<>();
+	private volatile IOException error;
+
+	public AsyncClassOutput(ClassOutput output, int threads) {
+		this.output = output;
+
+		AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+			Thread thread = new Thread(runnable, "cornflakes-io-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void write(String className, byte[] bytes) throws IOException {
+		if (error != null) {
+			throw error;
+		}
+
+		if (pending.put(className, bytes) == null) {
+			executor.execute(() -> flush(className));
+		}
+	}
+
+	private void flush(String className) {
+		synchronized (locks.computeIfAbsent(className, (key) -> new Object())) {
+			byte[] bytes = pending.remove(className);
+			if (bytes == null || error != null) {
+				return;
+			}
+
+			try {
+				output.write(className, bytes);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Waits for every queued class to be written and closes the underlying
+	 * output.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting for slow disks
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			output.close();
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package cornflakes.compiler;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
@@ -13,12 +16,15 @@ public class BooleanExpressionCompiler implements GenericCompiler {
 	private static final int IS = 6;
 	private static final int AND = 7;
 	private static final int OR = 8;
+	private static final int[] OPERATORS = { Lexer.EQUAL, Lexer.NOT_EQUAL, Lexer.GREATER_THAN, Lexer.LESS_THAN,
+			Lexer.GREATER_THAN_OR_EQUAL, Lexer.LESS_THAN_OR_EQUAL, Lexer.IS, Lexer.LOGICAL_AND, Lexer.LOGICAL_OR };
 
 	private int ifType = -1;
 	private MethodData data;
 	private Label end;
 	private boolean write;
 	private boolean valid = true;
+	private Map<String, Expression> operands = new HashMap<>();
 
 	public BooleanExpressionCompiler(MethodData data, Label end, boolean val) {
 		this.data = data;
@@ -35,34 +41,18 @@ public class BooleanExpressionCompiler implements GenericCompiler {
 
 	@Override
 	public void compile(ClassData data, MethodVisitor m, Block block, String body, String[] lines) {
+		TokenStream tokens = Lexer.tokenize(body);
+		int operator = -1;
+		for (int i = 0; i < OPERATORS.length && operator == -1; i++) {
+			operator = tokens.indexOf(OPERATORS[i]);
+			ifType = i;
+		}
+
 		String[] split = null;
-		if (Strings.contains(body, "==")) {
-			split = Strings.split(body, "==");
-			ifType = EQUAL;
-		} else if (Strings.contains(body, "!=")) {
-			split = Strings.split(body, "!=");
-			ifType = NOT_EQUAL;
-		} else if (Strings.contains(body, ">")) {
-			split = Strings.split(body, ">");
-			ifType = GREATER_THAN;
-		} else if (Strings.contains(body, "<")) {
-			split = Strings.split(body, "<");
-			ifType = LESS_THAN;
-		} else if (Strings.contains(body, ">=")) {
-			split = Strings.split(body, ">=");
-			ifType = GREATER_THAN_OR_EQUAL;
-		} else if (Strings.contains(body, "<=")) {
-			split = Strings.split(body, "<=");
-			ifType = LESS_THAN_OR_EQUAL;
-		} else if (Strings.contains(body, "is")) {
-			split = Strings.split(body, "is");
-			ifType = IS;
-		} else if (Strings.contains(body, "and")) {
-			split = Strings.split(body, "and");
-			ifType = AND;
-		} else if (Strings.contains(body, "or")) {
-			split = Strings.split(body, "or");
-			ifType = OR;
+		if (operator != -1) {
+			split = new String[] { tokens.before(operator), tokens.after(operator) };
+		} else {
+			ifType = -1;
 		}
 
 		String left = null;
@@ -169,46 +159,30 @@ public class BooleanExpressionCompiler implements GenericCompiler {
 		}
 	}
 
+	/**
+	 * Operands are parsed once and kept, so compiling the same comparison
+	 * again only writes them.
+	 */
 	private String pushToStack(String term, ClassData data, MethodVisitor m, Block thisBlock) {
-		String type = Types.getType(term, "");
-		if (type != null) {
-			if (type.equals("bool")) {
-				if (this.write) {
-					m.visitInsn(term.equals("false") ? ICONST_0 : ICONST_1);
-					this.data.ics();
-				}
-			} else {
-				int oc = Types.getOpcode(Types.PUSH, type);
-				Object lit = Types.parseLiteral(type, term);
-				if (oc == LDC) {
-					if (this.write) {
-						m.visitLdcInsn(lit);
-					}
-				} else {
-					if (this.write) {
-						String toString = lit.toString();
-						if (toString.equals("true")) {
-							m.visitInsn(ICONST_1);
-						} else if (toString.equals("false")) {
-							m.visitInsn(ICONST_0);
-						} else {
-							m.visitVarInsn(oc, Integer.parseInt(toString));
-						}
-					}
-				}
-
-				if (this.write) {
-					this.data.ics();
-				}
-			}
+		Expression operand = operands.get(term);
+		if (operand == null) {
+			ExpressionParser parser = new ExpressionParser(data, this.data, thisBlock, true);
+			operand = ExpressionOptimizer.optimize(parser.parseOperand(term));
+			operands.put(term, operand);
+		}
 
-			return type;
-		} else {
-			ExpressionCompiler ref = new ExpressionCompiler(this.write, this.data);
-			ref.compile(data, m, thisBlock, term, new String[] { term });
+		if (this.write) {
+			new ExpressionWriter(this.data, m).write(operand);
+		}
+		return operand.getType();
+	}
 
-			return ref.getReferenceSignature();
+	static int indexOfOperator(TokenStream tokens) {
+		int operator = -1;
+		for (int i = 0; i < OPERATORS.length && operator == -1; i++) {
+			operator = tokens.indexOf(OPERATORS[i]);
 		}
+		return operator;
 	}
 
 	public boolean isValid() {
@@ -0,0 +1,110 @@
+package cornflakes.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+
+/**
+ * Checks the code of a finished class with a dataflow analysis: the types of
+ * every instruction, the stack depth against the maximum stack and the used
+ * locals against the maximum locals. Types are looked up through their
+ * {@link ClassData}, so classes of the same build can be checked.
+ */
+public class BytecodeVerifier {
+	private static class ClassDataVerifier extends SimpleVerifier {
+		private ClassDataVerifier(Type currentClass, Type currentSuperClass, List<Type> interfaces,
+				boolean isInterface) {
+			super(Opcodes.ASM6, currentClass, currentSuperClass, interfaces, isInterface);
+		}
+
+		@Override
+		protected boolean isInterface(Type type) {
+			return type.getSort() == Type.OBJECT && forType(type).isInterface();
+		}
+
+		@Override
+		protected Type getSuperClass(Type type) {
+			if (type.getSort() == Type.ARRAY) {
+				return Type.getObjectType("java/lang/Object");
+			}
+
+			String name = type.getInternalName();
+			if (name.equals("java/lang/Object")) {
+				return null;
+			}
+			return Type.getObjectType(forType(type).getParentName());
+		}
+
+		@Override
+		protected boolean isAssignableFrom(Type target, Type test) {
+			if (target.equals(test) || target.getInternalName().equals("java/lang/Object")) {
+				return true;
+			}
+
+			if (target.getSort() == Type.ARRAY || test.getSort() == Type.ARRAY) {
+				if (target.getSort() != Type.ARRAY) {
+					String name = target.getInternalName();
+					return name.equals("java/lang/Cloneable") || name.equals("java/io/Serializable");
+				}
+				if (test.getSort() != Type.ARRAY || target.getDimensions() != test.getDimensions()) {
+					return false;
+				}
+
+				Type element = target.getElementType();
+				Type other = test.getElementType();
+				return element.getSort() == Type.OBJECT && other.getSort() == Type.OBJECT
+						&& isAssignableFrom(element, other);
+			}
+
+			return forType(target).isAssignableFrom(forType(test));
+		}
+
+		private static ClassData forType(Type type) {
+			try {
+				return ClassData.forName(type.getInternalName());
+			} catch (ClassNotFoundException e) {
+				throw new CompileError("Unresolved class in bytecode: " + type.getClassName());
+			}
+		}
+	}
+
+	/**
+	 * @throws CompileError
+	 *             describing the first invalid instruction of a method
+	 */
+	public static void verify(byte[] bytes) {
+		ClassNode node = new ClassNode();
+		new ClassReader(bytes).accept(node, ClassReader.SKIP_DEBUG);
+
+		List<Type> interfaces = new ArrayList<>();
+		for (String name : node.interfaces) {
+			interfaces.add(Type.getObjectType(name));
+		}
+		Type superClass = node.superName == null ? null : Type.getObjectType(node.superName);
+		boolean isInterface = (node.access & Opcodes.ACC_INTERFACE) != 0;
+
+		for (MethodNode method : node.methods) {
+			if (method.instructions.size() == 0) {
+				continue;
+			}
+
+			Analyzer<BasicValue> analyzer = new Analyzer<>(
+					new ClassDataVerifier(Type.getObjectType(node.name), superClass, interfaces, isInterface));
+			try {
+				analyzer.analyze(node.name, method);
+			} catch (AnalyzerException e) {
+				throw new CompileError("Invalid bytecode in " + node.name.replace('/', '.') + "." + method.name
+						+ method.desc + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -1,23 +1,35 @@
 package cornflakes.compiler;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 
 public class ClassData {
-	private static final HashMap<String, ClassData> classes = new HashMap<>();
+	private static final Map<String, ClassData> classes = new ConcurrentHashMap<>();
+	/**
+	 * Incremented whenever a method is added or the set of registered classes
+	 * changes, which invalidates every cached view of inherited methods.
+	 */
+	private static final AtomicInteger membersVersion = new AtomicInteger();
+	private static volatile SymbolIndex symbolIndex;
 	private String simpleClassName;
 	private String parentName;
 	private String className;
@@ -28,30 +40,58 @@ public class ClassData {
 	private byte[] byteCode;
 	private String[] interfaces;
 	private Map<String, String> use = new HashMap<>();
-	private Set<MethodData> methods = new HashSet<>();
-	private Set<ConstructorData> constructors = new HashSet<>();
-	private Set<FieldData> fields = new HashSet<>();
+	private List<MethodData> methods = new CopyOnWriteArrayList<>();
+	private Map<String, List<MethodData>> methodsByName = new ConcurrentHashMap<>();
+	private Map<String, MethodData> methodsBySignature = new ConcurrentHashMap<>();
+	private volatile InheritedMethods inheritedMethods;
+	private Set<ConstructorData> constructors = Collections.synchronizedSet(new LinkedHashSet<>());
+	private List<FieldData> fields = new CopyOnWriteArrayList<>();
+	private Map<String, FieldData> fieldsByName = new ConcurrentHashMap<>();
 	private Set<GenericParameter> genericParameters = new HashSet<>();
 	private ClassWriter classWriter;
 	private Class<?> javaClass;
+	private boolean isJavaClass;
+	private MemberSource members;
+	private Set<String> loadedMethods = ConcurrentHashMap.newKeySet();
+	private volatile boolean loadedAllMethods;
+	private volatile boolean loadedFields;
+	private volatile boolean loadedConstructors;
 	private boolean isIndexed;
 	private boolean isInterface;
 
 	public static ClassData forName(String name) throws ClassNotFoundException {
 		name = Strings.transformClassName(Types.unpadSignature(name));
 
-		if (classes.containsKey(name)) {
-			return classes.get(name);
+		ClassData data = classes.get(name);
+		CompileMetrics.classLookup(data != null);
+		if (data != null) {
+			return data;
 		}
 
-		return fromJavaClass(Class.forName(name.replace('/', '.')));
+		SymbolIndex index = symbolIndex;
+		if (index != null) {
+			data = index.get(name);
+			if (data != null) {
+				return registerJavaClass(name, data);
+			}
+		}
+
+		if (!name.startsWith("[")) {
+			data = ClassFileMembers.load(name);
+			if (data != null) {
+				return registerJavaClass(name, data);
+			}
+		}
+
+		return fromJavaClass(Class.forName(name.replace('/', '.'), false, ClassData.class.getClassLoader()));
 	}
 
 	public static ClassData fromJavaClass(Class<?> cls) {
 		String t = Strings.transformClassName(cls.getName());
 
-		if (classes.containsKey(t)) {
-			return classes.get(t);
+		ClassData existing = classes.get(t);
+		if (existing != null) {
+			return existing;
 		}
 
 		ClassData container = new ClassData(false);
@@ -62,16 +102,8 @@ public class ClassData {
 		container.setParentName(true,
 				cls.getSuperclass() == null ? "java/lang/Object" : cls.getSuperclass().getName().replace('.', '/'));
 
-		if (cls.getGenericSuperclass() != null) {
-			if (cls.getGenericSuperclass() instanceof ParameterizedType) {
-				Set<GenericParameter> par = new HashSet<>();
-
-				for (Type type : ((ParameterizedType) cls.getGenericSuperclass()).getActualTypeArguments()) {
-					par.add(new GenericParameter(type.getTypeName()));
-				}
-
-				container.genericParameters = par;
-			}
+		for (TypeVariable<?> type : cls.getTypeParameters()) {
+			container.addGeneric(new GenericParameter(type.getName()));
 		}
 
 		List<String> ifs = new ArrayList<>();
@@ -79,37 +111,39 @@ public class ClassData {
 			ifs.add(Strings.transformClassName(c.getName()));
 		}
 		container.setInterfaces(ifs.toArray(new String[ifs.size()]));
+		container.setMembers(new ReflectionMembers(cls));
 
+		// Java classes can be indexed like Cornflakes classes by declaring an
+		// indexer method
 		for (Method method : cls.getDeclaredMethods()) {
-			container.addMethod(MethodData.fromJavaMethod(method));
-		}
-
-		for (Method method : cls.getMethods()) {
-			MethodData data = MethodData.fromJavaMethod(method);
-			if (!container.methods.contains(data)) {
-				container.addMethod(data);
+			if (method.getName().equals("_index_") && Modifier.isPublic(method.getModifiers())
+					&& !Modifier.isStatic(method.getModifiers())) {
+				container.setIsIndexedClass(true);
 			}
 		}
 
-		if (!cls.isInterface()) {
-			for (Constructor<?> constructor : cls.getConstructors()) {
-				container.addConstructor(ConstructorData.fromJavaConstructor(constructor));
-			}
-			for (Field field : cls.getDeclaredFields()) {
-				container.fields.add(
-						new FieldData(field.getName(), Types.getTypeSignature(field.getType()), field.getModifiers()));
-			}
-		}
+		return registerJavaClass(t, container);
+	}
+
+	private static ClassData registerJavaClass(String name, ClassData data) {
+		data.isJavaClass = true;
+		ClassData existing = classes.putIfAbsent(name, data);
+		return existing != null ? existing : data;
+	}
 
-		classes.put(t, container);
-		return container;
+	/**
+	 * Resolves imported classes from the given index before reading their
+	 * class files; null stops using an index.
+	 */
+	public static void setSymbolIndex(SymbolIndex index) {
+		symbolIndex = index;
 	}
 
 	public ClassData() {
 		this(true);
 	}
 
-	private ClassData(boolean use) {
+	ClassData(boolean use) {
 		if (use) {
 			use("java.lang.Object", "object");
 			use("java.lang.String", "string");
@@ -138,6 +172,10 @@ public class ClassData {
 		}
 	}
 
+	public Collection<String> getUsedClasses() {
+		return use.values();
+	}
+
 	public boolean isUsing(String name) {
 		for (Entry<String, String> use : this.use.entrySet()) {
 			if (use.getKey().equals(use) || use.getValue().endsWith("/" + name)) {
@@ -246,7 +284,8 @@ public class ClassData {
 	}
 
 	public boolean hasMethod(String name) {
-		return getMethods(name).length > 0;
+		loadMethods(name);
+		return methodsByName.containsKey(name);
 	}
 
 	public boolean hasMethodBySignature(String name, String sig) throws ClassNotFoundException {
@@ -254,74 +293,214 @@ public class ClassData {
 	}
 
 	public MethodData[] getMethods() {
-		return this.methods.toArray(new MethodData[this.methods.size()]);
+		loadAllMethods();
+		return this.methods.toArray(new MethodData[0]);
 	}
 
 	public MethodData[] getMethods(String name) {
-		List<MethodData> methods = new ArrayList<>();
-
-		getMethods(name, methods);
+		loadMethods(name);
+		List<MethodData> methods = methodsByName.get(name);
+		return methods == null ? new MethodData[0] : methods.toArray(new MethodData[0]);
+	}
 
-		return methods.toArray(new MethodData[methods.size()]);
+	public MethodData getMethodBySignature(String name, String signature) {
+		loadMethods(name);
+		return methodsBySignature.get(name + signature);
 	}
 
+	/**
+	 * @return the methods with the given name declared by this class, its
+	 *         parents and its interfaces, the most specific ones first
+	 */
 	public MethodData[] getAllMethods(String name) throws ClassNotFoundException {
+		return getInheritedMethods(name).clone();
+	}
+
+	public MethodData[] getAllMethodsBySignature(String name, String signature) throws ClassNotFoundException {
 		List<MethodData> methods = new ArrayList<>();
-		this.getMethods(name, methods);
+		for (MethodData data : getInheritedMethods(name)) {
+			if (data.getSignature().equals(signature)) {
+				methods.add(data);
+			}
+		}
 
-		ClassData parent = this;
-		while ((parent = parent.getParentClass()) != null) {
-			parent.getMethods(name, methods);
+		return methods.toArray(new MethodData[methods.size()]);
+	}
+
+	private MethodData[] getInheritedMethods(String name) throws ClassNotFoundException {
+		int version = membersVersion.get();
+		InheritedMethods cache = inheritedMethods;
+		if (cache == null || cache.version != version) {
+			cache = new InheritedMethods(version);
+			inheritedMethods = cache;
 		}
 
-		if (interfaces.length > 0) {
-			for (String itf : interfaces) {
-				ClassData.forName(itf).getMethods(name, methods);
-			}
+		MethodData[] methods = cache.methods.get(name);
+		if (methods == null) {
+			methods = collectInheritedMethods(name);
+			cache.methods.put(name, methods);
 		}
 
-		return methods.toArray(new MethodData[methods.size()]);
+		return methods;
 	}
 
-	public MethodData[] getAllMethodsBySignature(String name, String signature) throws ClassNotFoundException {
-		List<MethodData> methods = new ArrayList<>();
-		this.getMethodsBySignature(name, signature, methods);
+	private MethodData[] collectInheritedMethods(String name) throws ClassNotFoundException {
+		Map<String, MethodData> methods = new LinkedHashMap<>();
+		this.collectMethods(name, methods);
 
 		ClassData parent = this;
 		while ((parent = parent.getParentClass()) != null) {
-			parent.getMethodsBySignature(name, signature, methods);
+			parent.collectMethods(name, methods);
 		}
 
 		if (interfaces.length > 0) {
 			for (String itf : interfaces) {
-				ClassData.forName(itf).getMethodsBySignature(name, signature, methods);
+				ClassData.forName(itf).collectMethods(name, methods);
 			}
 		}
 
-		return methods.toArray(new MethodData[methods.size()]);
+		return methods.values().toArray(new MethodData[methods.size()]);
 	}
 
-	private void getMethods(String name, List<MethodData> methods) {
-		for (MethodData data : this.methods) {
-			if (data.getName().equals(name)) {
-				methods.add(data);
+	private void collectMethods(String name, Map<String, MethodData> methods) {
+		loadMethods(name);
+		List<MethodData> list = methodsByName.get(name);
+		if (list != null) {
+			for (MethodData data : list) {
+				methods.putIfAbsent(data.toString(), data);
 			}
 		}
 	}
 
-	private void getMethodsBySignature(String name, String signature, List<MethodData> methods) {
-		for (MethodData data : this.methods) {
-			if (data.getName().equals(name) && data.getSignature().equals(signature)) {
-				methods.add(data);
+	public synchronized void addMethod(MethodData method) {
+		if (putMethod(method)) {
+			membersVersion.incrementAndGet();
+		}
+	}
+
+	private boolean putMethod(MethodData method) {
+		if (methodsBySignature.putIfAbsent(method.toString(), method) == null) {
+			methodsByName.computeIfAbsent(method.getName(), (name) -> new CopyOnWriteArrayList<>()).add(method);
+			methods.add(method);
+			return true;
+		}
+		return false;
+	}
+
+	void setMembers(MemberSource members) {
+		this.members = members;
+	}
+
+	/**
+	 * Creates the methods of an imported class with the given name: the
+	 * declared ones, followed by the public ones it inherits. Adding them does
+	 * not invalidate any cached view, as they have been part of the class all
+	 * along.
+	 */
+	private void loadMethods(String name) {
+		if (members == null || loadedMethods.contains(name)) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loadedMethods.contains(name)) {
+				return;
+			}
+
+			for (MethodData method : members.getDeclaredMethods(name)) {
+				putMethod(method);
+			}
+
+			try {
+				if (!isInterface && !className.equals("java/lang/Object")) {
+					for (MethodData method : getParentClass().getMethods(name)) {
+						if (method.hasModifier(Opcodes.ACC_PUBLIC)) {
+							putMethod(method);
+						}
+					}
+				}
+
+				for (String itf : interfaces) {
+					for (MethodData method : ClassData.forName(itf).getMethods(name)) {
+						if (method.hasModifier(Opcodes.ACC_PUBLIC) && !method.hasModifier(Opcodes.ACC_STATIC)) {
+							putMethod(method);
+						}
+					}
+				}
+			} catch (ClassNotFoundException e) {
+				throw new CompileError(e);
 			}
+
+			loadedMethods.add(name);
 		}
 	}
 
-	public void addMethod(MethodData method) {
-		methods.add(method);
+	private void loadAllMethods() {
+		if (members == null || loadedAllMethods) {
+			return;
+		}
+
+		synchronized (this) {
+			if (loadedAllMethods) {
+				return;
+			}
+
+			for (String name : members.getMethodNames()) {
+				loadMethods(name);
+			}
+
+			try {
+				if (!isInterface && !className.equals("java/lang/Object")) {
+					for (MethodData method : getParentClass().getMethods()) {
+						loadMethods(method.getName());
+					}
+				}
+
+				for (String itf : interfaces) {
+					for (MethodData method : ClassData.forName(itf).getMethods()) {
+						loadMethods(method.getName());
+					}
+				}
+			} catch (ClassNotFoundException e) {
+				throw new CompileError(e);
+			}
+
+			loadedAllMethods = true;
+		}
+	}
+
+	private void loadFields() {
+		if (members == null || loadedFields) {
+			return;
+		}
+
+		synchronized (this) {
+			if (!loadedFields) {
+				for (FieldData field : members.getDeclaredFields()) {
+					addField(field);
+				}
+				loadedFields = true;
+			}
+		}
+	}
+
+	private void loadConstructors() {
+		if (members == null || loadedConstructors) {
+			return;
+		}
+
+		synchronized (this) {
+			if (!loadedConstructors) {
+				for (ConstructorData constructor : members.getConstructors()) {
+					addConstructor(constructor);
+				}
+				loadedConstructors = true;
+			}
+		}
 	}
 
 	public ConstructorData[] getConstructors() {
+		loadConstructors();
 		return constructors.toArray(new ConstructorData[constructors.size()]);
 	}
 
@@ -334,17 +513,14 @@ public class ClassData {
 	}
 
 	public FieldData getField(String name) {
-		for (FieldData data : this.fields) {
-			if (data.getName().equals(name)) {
-				return data;
-			}
-		}
-
-		return null;
+		loadFields();
+		return fieldsByName.get(name);
 	}
 
-	public void addField(FieldData method) {
-		fields.add(method);
+	public synchronized void addField(FieldData field) {
+		if (fieldsByName.putIfAbsent(field.getName(), field) == null) {
+			fields.add(field);
+		}
 	}
 
 	public int getModifiers() {
@@ -364,14 +540,6 @@ public class ClassData {
 	}
 
 	public boolean isAssignableFrom(ClassData test) {
-		if (this.isInterface) {
-			for (String iface : test.interfaces) {
-				if (iface.equals(className)) {
-					return true;
-				}
-			}
-		}
-
 		if (test.className.equals(className)) {
 			return true;
 		}
@@ -379,23 +547,59 @@ public class ClassData {
 			return javaClass.isAssignableFrom(test.javaClass);
 		}
 
-		while (!test.className.equals("java/lang/Object")) {
+		while (true) {
+			if (this.isInterface && test.implementsInterface(className)) {
+				return true;
+			}
+			if (test.className.equals("java/lang/Object")) {
+				return false;
+			}
+
 			try {
 				test = ClassData.forName(test.parentName);
+			} catch (ClassNotFoundException e) {
+				throw new CompileError("Invalid parent: " + test.parentName);
+			}
+
+			if (test.className.equals(className)) {
+				return true;
+			}
+		}
+	}
 
-				if (test.className.equals(className)) {
+	private boolean implementsInterface(String name) {
+		if (interfaces == null) {
+			return false;
+		}
+
+		for (String iface : interfaces) {
+			if (iface.equals(name)) {
+				return true;
+			}
+
+			try {
+				if (ClassData.forName(iface).implementsInterface(name)) {
 					return true;
 				}
 			} catch (ClassNotFoundException e) {
-				throw new CompileError("Invalid parent: " + test.parentName);
+				throw new CompileError("Invalid interface: " + iface);
 			}
 		}
-
-		return false; // TODO
+		return false;
 	}
 
 	public static void registerCornflakesClass(ClassData data) {
 		classes.put(data.getClassName(), data);
+		membersVersion.incrementAndGet();
+	}
+
+	/**
+	 * Removes every class that was not loaded from the Java class path, so the
+	 * next build starts from a clean registry but keeps the imported JDK types.
+	 */
+	public static void unregisterCornflakesClasses() {
+		classes.values().removeIf((data) -> !data.isJavaClass);
+		membersVersion.incrementAndGet();
 	}
 
 	@Override
@@ -419,8 +623,9 @@ public class ClassData {
 		this.packageName = packageName;
 	}
 
-	public Set<FieldData> getFields() {
-		return fields;
+	public List<FieldData> getFields() {
+		loadFields();
+		return Collections.unmodifiableList(fields);
 	}
 
 	public void setInterfaces(String[] intArr) {
@@ -485,7 +690,20 @@ public class ClassData {
 		return null;
 	}
 
+	public void addGeneric(GenericParameter par) {
+		this.genericParameters.add(par);
+	}
+
 	public GenericParameter[] getGenerics() {
 		return this.genericParameters.toArray(new GenericParameter[this.genericParameters.size()]);
 	}
+
+	private static class InheritedMethods {
+		private final int version;
+		private final Map<String, MethodData[]> methods = new ConcurrentHashMap<>();
+
+		private InheritedMethods(int version) {
+			this.version = version;
+		}
+	}
 }
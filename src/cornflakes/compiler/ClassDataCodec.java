@@ -0,0 +1,244 @@
+package cornflakes.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Reads and writes the exported surface of a class: its header, fields with
+ * the values of constants, method signatures, constructors and
+ * generic parameters. Fields and generic parameters are written in a sorted
+ * order, methods in the order they were declared, as overloads are resolved
+ * in that order.
+ */
+public class ClassDataCodec {
+	public static byte[] encode(ClassData data) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try {
+			write(new DataOutputStream(bytes), data);
+		} catch (IOException e) {
+			throw new CompileError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static ClassData decode(byte[] bytes) {
+		try {
+			return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		} catch (IOException e) {
+			throw new CompileError(e);
+		}
+	}
+
+	public static void write(DataOutput out, ClassData data) throws IOException {
+		out.writeUTF(data.getClassName());
+		writeString(out, data.getSimpleClassName());
+		writeString(out, data.getParentName());
+		writeString(out, data.getPackageName());
+		writeString(out, data.getSourceName());
+		out.writeInt(data.getModifiers());
+		out.writeBoolean(data.isInterface());
+		out.writeBoolean(data.isIndexedClass());
+		out.writeBoolean(data.hasConstructor());
+
+		String[] interfaces = data.getInterfaces() == null ? new String[0] : data.getInterfaces();
+		out.writeShort(interfaces.length);
+		for (String itf : interfaces) {
+			out.writeUTF(itf);
+		}
+
+		writeGenerics(out, Arrays.asList(data.getGenerics()));
+
+		List<FieldData> fields = new ArrayList<>(data.getFields());
+		fields.sort(Comparator.comparing(FieldData::getName));
+		out.writeShort(fields.size());
+		for (FieldData field : fields) {
+			out.writeUTF(field.getName());
+			out.writeUTF(field.getType());
+			out.writeInt(field.getModifiers());
+			out.writeBoolean(field.isGeneric());
+			out.writeShort(field.getGenericTypes().size());
+			for (GenericType type : field.getGenericTypes()) {
+				out.writeUTF(type.getType());
+				out.writeBoolean(type.isExtendsType());
+			}
+			writeConstant(out, field.getConstantValue());
+		}
+
+		writeMethods(out, Arrays.asList(data.getMethods()));
+		writeMethods(out, Arrays.asList(data.getConstructors()));
+	}
+
+	public static ClassData read(DataInput in) throws IOException {
+		ClassData data = new ClassData(false);
+		data.setClassName(in.readUTF());
+		data.setSimpleClassName(readString(in));
+		data.setParentName(true, readString(in));
+		data.setPackageName(readString(in));
+		data.setSourceName(readString(in));
+		data.setModifiers(in.readInt());
+		data.setIsInterface(in.readBoolean());
+		data.setIsIndexedClass(in.readBoolean());
+		data.setHasConstructor(in.readBoolean());
+
+		String[] interfaces = new String[in.readUnsignedShort()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = in.readUTF();
+		}
+		data.setInterfaces(interfaces);
+
+		for (GenericParameter par : readGenerics(in)) {
+			data.addGeneric(par);
+		}
+
+		int fields = in.readUnsignedShort();
+		for (int i = 0; i < fields; i++) {
+			FieldData field = new FieldData(in.readUTF(), in.readUTF(), in.readInt());
+			field.setGeneric(in.readBoolean());
+			int types = in.readUnsignedShort();
+			for (int j = 0; j < types; j++) {
+				field.getGenericTypes().add(new GenericType(in.readUTF(), in.readBoolean()));
+			}
+			field.setConstantValue(readConstant(in));
+			data.addField(field);
+		}
+
+		int methods = in.readUnsignedShort();
+		for (int i = 0; i < methods; i++) {
+			data.addMethod(readMethod(in, false));
+		}
+
+		int constructors = in.readUnsignedShort();
+		for (int i = 0; i < constructors; i++) {
+			data.addConstructor((ConstructorData) readMethod(in, true));
+		}
+
+		return data;
+	}
+
+	private static void writeMethods(DataOutput out, List<? extends MethodData> methods) throws IOException {
+		out.writeShort(methods.size());
+		for (MethodData method : methods) {
+			out.writeUTF(method.getName());
+			out.writeUTF(method.getReturnTypeSignature());
+			out.writeInt(method.getModifiers());
+			out.writeBoolean(method.isInterfaceMethod());
+
+			out.writeShort(method.getParameters().size());
+			for (Entry<String, String> par : method.getParameters().entrySet()) {
+				out.writeUTF(par.getKey());
+				out.writeUTF(par.getValue());
+			}
+
+			writeGenerics(out, method.getGenericParameters());
+		}
+	}
+
+	private static MethodData readMethod(DataInput in, boolean constructor) throws IOException {
+		String name = in.readUTF();
+		String returnType = in.readUTF();
+		int modifiers = in.readInt();
+		boolean interfaceMethod = in.readBoolean();
+
+		MethodData method = constructor ? new ConstructorData(name, modifiers)
+				: new MethodData(name, returnType, interfaceMethod, modifiers);
+
+		int pars = in.readUnsignedShort();
+		for (int i = 0; i < pars; i++) {
+			method.addParameter(in.readUTF(), in.readUTF());
+		}
+
+		for (GenericParameter par : readGenerics(in)) {
+			method.addGenericParameter(par);
+		}
+
+		return method;
+	}
+
+	private static void writeGenerics(DataOutput out, Iterable<GenericParameter> generics) throws IOException {
+		List<GenericParameter> sorted = new ArrayList<>();
+		for (GenericParameter par : generics) {
+			sorted.add(par);
+		}
+		sorted.sort(Comparator.comparing(GenericParameter::getName));
+
+		out.writeShort(sorted.size());
+		for (GenericParameter par : sorted) {
+			out.writeUTF(par.getName());
+			writeString(out, par.getType());
+			writeString(out, par.getExtendsType());
+		}
+	}
+
+	private static List<GenericParameter> readGenerics(DataInput in) throws IOException {
+		int count = in.readUnsignedShort();
+		List<GenericParameter> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(new GenericParameter(in.readUTF(), readString(in), readString(in)));
+		}
+		return list;
+	}
+
+	private static void writeConstant(DataOutput out, Object value) throws IOException {
+		if (value instanceof Integer) {
+			out.writeByte('I');
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte('F');
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte('D');
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte('Z');
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof String) {
+			out.writeByte('S');
+			out.writeUTF((String) value);
+		} else {
+			out.writeByte(0);
+		}
+	}
+
+	private static Object readConstant(DataInput in) throws IOException {
+		switch (in.readByte()) {
+			case 'I':
+				return in.readInt();
+			case 'J':
+				return in.readLong();
+			case 'F':
+				return in.readFloat();
+			case 'D':
+				return in.readDouble();
+			case 'Z':
+				return in.readBoolean();
+			case 'S':
+				return in.readUTF();
+			default:
+				return null;
+		}
+	}
+
+	private static void writeString(DataOutput out, String str) throws IOException {
+		out.writeBoolean(str != null);
+		if (str != null) {
+			out.writeUTF(str);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -0,0 +1,190 @@
+package cornflakes.compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+/**
+ * Reads an imported class straight from its class file. The class is neither
+ * loaded nor initialized, and only the names and descriptors of its members
+ * are kept until they are looked up.
+ */
+class ClassFileMembers extends ClassVisitor implements MemberSource {
+	private static final int READER_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+	private ClassData data;
+	private Map<String, List<Member>> methods = new LinkedHashMap<>();
+	private List<Member> constructors = new ArrayList<>();
+	private List<Member> fields = new ArrayList<>();
+
+	/**
+	 * @return the class with the given internal name, or null if there is no
+	 *         class file for it or its format is not supported
+	 */
+	public static ClassData load(String name) {
+		ClassLoader loader = ClassFileMembers.class.getClassLoader();
+		if (loader == null) {
+			loader = ClassLoader.getSystemClassLoader();
+		}
+
+		ClassReader reader;
+		try (InputStream in = loader.getResourceAsStream(name + ".class")) {
+			if (in == null) {
+				return null;
+			}
+			reader = new ClassReader(in);
+		} catch (IOException | IllegalArgumentException e) {
+			// newer class file versions than the ones ASM understands are
+			// imported with reflection instead
+			return null;
+		}
+
+		ClassData data = new ClassData(false);
+		ClassFileMembers members = new ClassFileMembers(data);
+		reader.accept(members, READER_FLAGS);
+
+		if (!data.getClassName().equals(name)) {
+			// resources are looked up case insensitively on some file systems
+			return null;
+		}
+
+		data.setMembers(members);
+		return data;
+	}
+
+	private ClassFileMembers(ClassData data) {
+		super(Opcodes.ASM6);
+		this.data = data;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName,
+			String[] interfaces) {
+		String simpleName = name.substring(name.lastIndexOf('/') + 1);
+
+		data.setClassName(name);
+		data.setSimpleClassName(simpleName.substring(simpleName.lastIndexOf('$') + 1));
+		data.setIsInterface((access & Opcodes.ACC_INTERFACE) != 0);
+		data.setParentName(true, superName == null ? "java/lang/Object" : superName);
+		data.setInterfaces(interfaces == null ? new String[0] : interfaces.clone());
+
+		if (signature != null) {
+			new SignatureReader(signature).accept(new SignatureVisitor(Opcodes.ASM6) {
+				@Override
+				public void visitFormalTypeParameter(String name) {
+					data.addGeneric(new GenericParameter(name));
+				}
+			});
+		}
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+		Member member = new Member(access, name, desc);
+		if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)) == (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)) {
+			// booleans are stored as int constants
+			member.constant = desc.equals("Z") && value instanceof Integer ? (Integer) value != 0 : value;
+		}
+		fields.add(member);
+		return null;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+		if (name.equals("<init>")) {
+			if ((access & Opcodes.ACC_PUBLIC) != 0) {
+				constructors.add(new Member(access, name, desc));
+			}
+		} else if (!name.equals("<clinit>")) {
+			methods.computeIfAbsent(name, (key) -> new ArrayList<>()).add(new Member(access, name, desc));
+
+			if (name.equals("_index_") && (access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)) == Opcodes.ACC_PUBLIC) {
+				data.setIsIndexedClass(true);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Collection<String> getMethodNames() {
+		return methods.keySet();
+	}
+
+	@Override
+	public List<MethodData> getDeclaredMethods(String name) {
+		List<MethodData> list = new ArrayList<>();
+		List<Member> members = methods.get(name);
+		if (members == null) {
+			return list;
+		}
+
+		for (Member member : members) {
+			MethodData method = new MethodData(name, Types.getTypeSignature(Type.getReturnType(member.desc)),
+					data.isInterface(), member.access);
+			addParameters(method, member.desc);
+			list.add(method);
+		}
+		return list;
+	}
+
+	@Override
+	public List<FieldData> getDeclaredFields() {
+		List<FieldData> list = new ArrayList<>();
+		for (Member member : fields) {
+			FieldData field = new FieldData(member.name, Types.getTypeSignature(Type.getType(member.desc)),
+					member.access);
+			field.setConstantValue(member.constant);
+			list.add(field);
+		}
+		return list;
+	}
+
+	@Override
+	public List<ConstructorData> getConstructors() {
+		List<ConstructorData> list = new ArrayList<>();
+		if (data.isInterface()) {
+			return list;
+		}
+
+		for (Member member : constructors) {
+			// named like reflection names constructors, after the class
+			ConstructorData constructor = new ConstructorData(data.getClassName().replace('/', '.'), member.access);
+			addParameters(constructor, member.desc);
+			list.add(constructor);
+		}
+		return list;
+	}
+
+	private static void addParameters(MethodData method, String desc) {
+		Type[] types = Type.getArgumentTypes(desc);
+		for (int i = 0; i < types.length; i++) {
+			method.addParameter("arg" + i, Types.getTypeSignature(types[i]));
+		}
+	}
+
+	private static class Member {
+		private int access;
+		private String name;
+		private String desc;
+		private Object constant;
+
+		private Member(int access, String name, String desc) {
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+		}
+	}
+}
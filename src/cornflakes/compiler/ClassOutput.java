@@ -0,0 +1,36 @@
+package cornflakes.compiler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A destination for compiled classes. Classes are handed over as soon as
+ * they are emitted, so their bytes do not have to be kept until the end of
+ * the build.
+ */
+public interface ClassOutput extends Closeable {
+	/**
+	 * @param className
+	 *            the internal name of the class, like
+	 *            <code>cornflakes/lang/Console</code>
+	 */
+	public void write(String className, byte[] bytes) throws IOException;
+
+	/**
+	 * @return a jar output if the path ends with .jar or .zip, otherwise a
+	 *         directory output
+	 */
+	public static ClassOutput open(Path path) throws IOException {
+		String name = path.getFileName().toString().toLowerCase();
+		if (name.endsWith(".jar") || name.endsWith(".zip")) {
+			return new JarClassOutput(path);
+		}
+		return new DirectoryClassOutput(path);
+	}
+
+	public static boolean isDirectory(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		return !name.endsWith(".jar") && !name.endsWith(".zip");
+	}
+}
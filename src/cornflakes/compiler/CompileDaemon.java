@@ -0,0 +1,300 @@
+package cornflakes.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long running compiler which keeps the imported classes and the warmed up
+ * JIT between builds. It listens on a loopback port and serves every
+ * connection on its own thread, but compiles one request at a time, as the
+ * compiler state is shared. A client which stops sending is dropped after
+ * {@link #READ_TIMEOUT}.
+ *
+ * <p>
+ * Every local user can connect to the port, and a request makes the daemon
+ * read any file its owner can read or shut it down. So the daemon writes a
+ * random token to a file only its owner can read, see {@link #tokenFile(int)},
+ * and refuses requests which do not carry that token.
+ *
+ * <p>
+ * A request is the magic number, the protocol version, the token and a type. A compile
+ * request is followed by the number of source files and their absolute
+ * paths. The response is a status, then either the diagnostic or the number
+ * of classes followed by their names and bytes, and finally the compile time
+ * in milliseconds.
+ */
+public class CompileDaemon {
+	public static final int DEFAULT_PORT = 7474;
+
+	static final int MAGIC = 0x43464344;
+	static final int VERSION = 2;
+	static final int TOKEN_LENGTH = 32;
+	static final int READ_TIMEOUT = 10000;
+	static final int COMPILE = 1;
+	static final int SHUTDOWN = 2;
+	static final int OK = 0;
+	static final int ERROR = 1;
+
+	private int port;
+	private PhaseScheduler scheduler;
+	private byte[] token;
+	private ServerSocket server;
+	private volatile boolean running;
+
+	public CompileDaemon(int port, PhaseScheduler scheduler) {
+		this.port = port;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Starts a daemon: <code>CompileDaemon [--port=N] [--parallelism=N]
+	 * [--symbols=path] [--compute-frames] [--verify] [--target=N]</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--port=")) {
+				port = Integer.parseInt(value);
+			} else if (arg.startsWith("--parallelism=")) {
+				parallelism = Integer.parseInt(value);
+			} else if (arg.startsWith("--symbols=")) {
+				ClassData.setSymbolIndex(SymbolIndex.open(Paths.get(value)));
+			} else if (arg.equals("--compute-frames")) {
+				Compiler.setComputeFrames(true);
+			} else if (arg.equals("--verify")) {
+				Compiler.setVerify(true);
+			} else if (arg.startsWith("--target=")) {
+				Compiler.setTarget(Integer.parseInt(value));
+			} else {
+				throw new CompileError("Unknown option: " + arg);
+			}
+		}
+
+		PhaseScheduler scheduler = new PhaseScheduler(parallelism);
+		try {
+			new CompileDaemon(port, scheduler).run();
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	public void run() throws IOException {
+		running = true;
+
+		ExecutorService connections = Executors.newCachedThreadPool((task) -> {
+			Thread thread = new Thread(task, "cornflakes-daemon-connection");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			this.server = server;
+			Path file = tokenFile(server.getLocalPort());
+			token = writeToken(file);
+
+			try {
+				System.out.println("Listening on port " + server.getLocalPort() + ".");
+
+				while (running) {
+					Socket socket;
+					try {
+						socket = server.accept();
+					} catch (SocketException e) {
+						// closed by a shutdown request
+						break;
+					}
+					connections.execute(() -> serve(socket));
+				}
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		} finally {
+			connections.shutdown();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket closed = socket) {
+			socket.setSoTimeout(READ_TIMEOUT);
+			handle(socket);
+		} catch (IOException e) {
+			System.out.println("Request failed: " + e);
+		}
+	}
+
+	/**
+	 * @return the file holding the token of the daemon on the given port
+	 */
+	public static Path tokenFile(int port) {
+		return Paths.get(System.getProperty("user.home"), ".cornflakes", "daemon-" + port + ".token");
+	}
+
+	private static byte[] writeToken(Path file) throws IOException {
+		byte[] token = new byte[TOKEN_LENGTH];
+		new SecureRandom().nextBytes(token);
+
+		Files.createDirectories(file.getParent());
+		Files.deleteIfExists(file);
+		try {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			// the file system has no POSIX permissions
+			Files.createFile(file);
+			File created = file.toFile();
+			if (!created.setReadable(false, false) || !created.setReadable(true, true)
+					|| !created.setWritable(false, false) || !created.setWritable(true, true)) {
+				throw new IOException("Could not restrict the access to " + file);
+			}
+		}
+		Files.write(file, token);
+		return token;
+	}
+
+	private static void writeHeader(DataOutputStream out, int port, int type) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.write(Files.readAllBytes(tokenFile(port)));
+		out.writeInt(type);
+	}
+
+	private void handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Unsupported client");
+		}
+
+		byte[] received = new byte[TOKEN_LENGTH];
+		in.readFully(received);
+		if (!MessageDigest.isEqual(received, token)) {
+			throw new IOException("Invalid token");
+		}
+
+		int type = in.readInt();
+		if (type == SHUTDOWN) {
+			running = false;
+			out.writeInt(OK);
+			out.flush();
+			server.close();
+			return;
+		} else if (type != COMPILE) {
+			throw new IOException("Unknown request type: " + type);
+		}
+
+		int count = in.readInt();
+		List<File> files = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			files.add(new File(in.readUTF()));
+		}
+
+		long time = System.currentTimeMillis();
+		MemoryClassOutput output = new MemoryClassOutput();
+		String error = compile(files, output);
+		time = System.currentTimeMillis() - time;
+
+		if (error != null) {
+			out.writeInt(ERROR);
+			out.writeUTF(error);
+		} else {
+			Map<String, byte[]> classes = output.getClasses();
+			out.writeInt(OK);
+			out.writeInt(classes.size());
+			for (Entry<String, byte[]> entry : classes.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+		}
+		out.writeLong(time);
+		out.flush();
+	}
+
+	/**
+	 * @return the diagnostic, or null if the build succeeded
+	 */
+	private synchronized String compile(List<File> files, ClassOutput output) {
+		Compiler.reset();
+		CompileMetrics.reset();
+		Compiler.setOutput(output);
+
+		try {
+			MainCompiler.compile(scheduler, files);
+			return null;
+		} catch (CompileError e) {
+			return e.getMessage();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return "Internal compiler error: " + e;
+		} finally {
+			Compiler.setOutput(null);
+			Compiler.reset();
+		}
+	}
+
+	/**
+	 * Compiles the given files on the daemon listening on the given port and
+	 * writes the resulting classes to the output.
+	 *
+	 * @return the time the daemon took to compile, in milliseconds
+	 */
+	public static long request(int port, List<File> files, ClassOutput output) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			writeHeader(out, port, COMPILE);
+			out.writeInt(files.size());
+			for (File file : files) {
+				out.writeUTF(file.getAbsolutePath());
+			}
+			out.flush();
+
+			if (in.readInt() != OK) {
+				throw new CompileError(in.readUTF());
+			}
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				output.write(name, bytes);
+			}
+
+			return in.readLong();
+		}
+	}
+
+	public static void shutdown(int port) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			writeHeader(out, port, SHUTDOWN);
+			out.flush();
+			new DataInputStream(socket.getInputStream()).readInt();
+		}
+	}
+}
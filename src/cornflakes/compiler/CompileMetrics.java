@@ -0,0 +1,294 @@
+package cornflakes.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects timings of the compilation phases, of every class in a phase and
+ * of every method body, together with a few counters of the hot paths. The
+ * results are written as a JSON report and, if enabled and supported by the
+ * JVM, recorded as JFR events. Nothing is collected unless one of them is
+ * enabled.
+ */
+public class CompileMetrics {
+	public static final String READ = "read";
+	public static final String HEAD = "head";
+	public static final String IMPORTS = "imports";
+	public static final String SIGNATURES = "signatures";
+	public static final String STATIC_INIT = "static-init";
+	public static final String BODIES = "bodies";
+	public static final String VERIFICATION = "verification";
+	public static final String EMIT = "emit";
+
+	private static final Timer NONE = new Timer(null, null, null);
+
+	private static volatile boolean enabled;
+	private static volatile boolean events;
+
+	private static final LongAdder forNameCalls = new LongAdder();
+	private static final LongAdder forNameHits = new LongAdder();
+	private static final LongAdder stringScans = new LongAdder();
+	private static final LongAdder lexerRuns = new LongAdder();
+	private static final Map<String, AtomicLong> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+	private static final Map<String, ClassMetrics> classes = new ConcurrentHashMap<>();
+
+	public static class Timer {
+		private String phase;
+		private String className;
+		private String method;
+		private long start;
+		private Object event;
+
+		private Timer(String phase, String className, String method) {
+			this.phase = phase;
+			this.className = className;
+			this.method = method;
+		}
+
+		public void stop() {
+			stop(className);
+		}
+
+		/**
+		 * Stops the timer and attributes it to the given class, for phases
+		 * which only know the class once they are done.
+		 */
+		public void stop(String className) {
+			if (this == NONE) {
+				return;
+			}
+
+			long nanos = System.nanoTime() - start;
+			if (enabled) {
+				if (className == null) {
+					phases.computeIfAbsent(phase, (key) -> new AtomicLong()).addAndGet(nanos);
+				} else if (method == null) {
+					getClassMetrics(className).addPhase(phase, nanos);
+				} else {
+					getClassMetrics(className).addMethod(method, nanos);
+				}
+			}
+			if (event != null) {
+				JfrEvents.commit(event, className);
+			}
+		}
+	}
+
+	private static class ClassMetrics {
+		private Map<String, Long> phases = new LinkedHashMap<>();
+		private Map<String, Long> methods = new LinkedHashMap<>();
+		private long bytes;
+
+		private synchronized void addPhase(String phase, long nanos) {
+			phases.merge(phase, nanos, Long::sum);
+		}
+
+		private synchronized void addMethod(String method, long nanos) {
+			methods.merge(method, nanos, Long::sum);
+		}
+	}
+
+	/**
+	 * Starts collecting timings and counters for the JSON report.
+	 */
+	public static void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * Starts recording JFR events, if the JVM supports them.
+	 *
+	 * @return whether events are recorded
+	 */
+	public static boolean enableEvents() {
+		// JfrEvents may only be loaded once the JFR API is known to exist
+		try {
+			Class.forName("jdk.jfr.Event", false, CompileMetrics.class.getClassLoader());
+			events = true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			events = false;
+		}
+		return events;
+	}
+
+	public static boolean isEnabled() {
+		return enabled || events;
+	}
+
+	public static void reset() {
+		forNameCalls.reset();
+		forNameHits.reset();
+		stringScans.reset();
+		lexerRuns.reset();
+		phases.clear();
+		classes.clear();
+	}
+
+	public static Timer time(String phase) {
+		return time(phase, null, null);
+	}
+
+	public static Timer time(String phase, String className) {
+		return time(phase, className, null);
+	}
+
+	public static Timer time(String phase, String className, String method) {
+		if (!enabled && !events) {
+			return NONE;
+		}
+
+		Timer timer = new Timer(phase, className, method);
+		if (events) {
+			timer.event = JfrEvents.begin(phase, method);
+		}
+		timer.start = System.nanoTime();
+		return timer;
+	}
+
+	public static void classLookup(boolean hit) {
+		if (enabled) {
+			forNameCalls.increment();
+			if (hit) {
+				forNameHits.increment();
+			}
+		}
+	}
+
+	public static void stringScan() {
+		if (enabled) {
+			stringScans.increment();
+		}
+	}
+
+	public static void lexerRun() {
+		if (enabled) {
+			lexerRuns.increment();
+		}
+	}
+
+	public static void emitted(String className, int bytes) {
+		if (enabled) {
+			ClassMetrics metrics = getClassMetrics(className);
+			synchronized (metrics) {
+				metrics.bytes += bytes;
+			}
+		}
+		if (events) {
+			JfrEvents.emitted(className, bytes);
+		}
+	}
+
+	/**
+	 * Records the counters as a single JFR event.
+	 */
+	public static void commitSummary() {
+		if (events) {
+			JfrEvents.summary(forNameCalls.sum(), forNameHits.sum(), stringScans.sum(), lexerRuns.sum());
+		}
+	}
+
+	private static ClassMetrics getClassMetrics(String className) {
+		return classes.computeIfAbsent(className, (key) -> new ClassMetrics());
+	}
+
+	public static void writeReport(Path path, long totalMillis) throws IOException {
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+
+		try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			out.write(toJson(totalMillis));
+		}
+	}
+
+	public static String toJson(long totalMillis) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"totalMillis\": ").append(totalMillis).append(",\n");
+
+		json.append("  \"counters\": {\n");
+		json.append("    \"forNameCalls\": ").append(forNameCalls.sum()).append(",\n");
+		json.append("    \"forNameHits\": ").append(forNameHits.sum()).append(",\n");
+		json.append("    \"stringScans\": ").append(stringScans.sum()).append(",\n");
+		json.append("    \"lexerRuns\": ").append(lexerRuns.sum()).append("\n");
+		json.append("  },\n");
+
+		List<Entry<String, AtomicLong>> phaseList;
+		synchronized (phases) {
+			phaseList = new ArrayList<>(phases.entrySet());
+		}
+
+		json.append("  \"phases\": [");
+		for (int i = 0; i < phaseList.size(); i++) {
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    { \"name\": ").append(quote(phaseList.get(i).getKey())).append(", \"nanos\": ")
+					.append(phaseList.get(i).getValue().get()).append(" }");
+		}
+		json.append(phaseList.isEmpty() ? "],\n" : "\n  ],\n");
+
+		Map<String, ClassMetrics> sorted = new TreeMap<>(classes);
+		json.append("  \"classes\": [");
+		boolean first = true;
+		for (Entry<String, ClassMetrics> entry : sorted.entrySet()) {
+			ClassMetrics metrics = entry.getValue();
+			json.append(first ? "\n" : ",\n");
+			first = false;
+
+			synchronized (metrics) {
+				json.append("    {\n");
+				json.append("      \"name\": ").append(quote(entry.getKey())).append(",\n");
+				json.append("      \"bytes\": ").append(metrics.bytes).append(",\n");
+				json.append("      \"phases\": ");
+				appendNanos(json, metrics.phases);
+				json.append(",\n");
+				json.append("      \"methods\": ");
+				appendNanos(json, metrics.methods);
+				json.append("\n    }");
+			}
+		}
+		json.append(sorted.isEmpty() ? "]\n" : "\n  ]\n");
+		json.append("}\n");
+
+		return json.toString();
+	}
+
+	private static void appendNanos(StringBuilder json, Map<String, Long> map) {
+		json.append("{");
+		boolean first = true;
+		for (Entry<String, Long> entry : map.entrySet()) {
+			json.append(first ? " " : ", ");
+			first = false;
+			json.append(quote(entry.getKey())).append(": ").append(entry.getValue());
+		}
+		json.append(map.isEmpty() ? "}" : " }");
+	}
+
+	private static String quote(String str) {
+		StringBuilder quoted = new StringBuilder(str.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -4,8 +4,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 public class CompileUtils {
+	/**
+	 * Drops everything written to it. Code that can never run is compiled
+	 * against it, so it is still checked but not emitted.
+	 */
+	public static final MethodVisitor DISCARD = new MethodVisitor(Opcodes.ASM5) {
+	};
+
 	public static class VariableDeclaration {
 		private String variableType;
 		private Object value;
@@ -1,23 +1,36 @@
 package cornflakes.compiler;
 
 import java.awt.Dimension;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 
 public abstract class Compiler implements Opcodes {
-	private static Map<String, AfterCompile> postCompilers = new HashMap<>();
+	private static Map<String, AfterCompile> postCompilers = new ConcurrentHashMap<>();
+	private static volatile ClassOutput output;
+	private static volatile boolean computeFrames;
+	private static volatile boolean verify;
+	private static volatile int target = 8;
 
 	public static Dimension dim = new Dimension(5, 5);
 
 	public abstract void compile(ClassData data, ClassWriter cw, String body, String[] lines);
 
 	public static ClassData compile(String file, String cls) {
+		return compile(file, preprocess(cls));
+	}
+
+	/**
+	 * Splits a source file into trimmed lines, dropping empty lines, comments
+	 * and trailing semicolons.
+	 */
+	public static String[] preprocess(String cls) {
 		List<String> list = Arrays.asList(cls.split(System.lineSeparator())).stream().map((x) -> {
 			String trim = x.trim();
 			if (trim.endsWith(";")) {
@@ -25,9 +38,11 @@ public abstract class Compiler implements Opcodes {
 			}
 			return trim;
 		}).filter((x) -> !x.isEmpty() && !x.startsWith("//")).collect(Collectors.toList());
-		String[] lines = list.toArray(new String[list.size()]);
+		return list.toArray(new String[list.size()]);
+	}
 
-		ClassWriter cw = new ClassWriter(0);
+	public static ClassData compile(String file, String[] lines) {
+		ClassWriter cw = computeFrames ? new FrameClassWriter() : new ClassWriter(0);
 		ClassData data = new ClassData();
 		data.setSourceName(file);
 
@@ -37,7 +52,7 @@ public abstract class Compiler implements Opcodes {
 	}
 
 	public static void addPostCompiler(String name, PostCompiler compiler) {
-		postCompilers.get(name).getCompilers().add(compiler);
+		postCompilers.get(name).addCompiler(compiler);
 	}
 
 	public static void executePostCompilers() {
@@ -45,11 +60,88 @@ public abstract class Compiler implements Opcodes {
 			after.finish();
 		}
 	}
-	
-	public static void endPostCompilers() {
+
+	public static void executePostCompilers(PhaseScheduler scheduler, String phase) {
+		scheduler.run(postCompilers.values(), (after) -> {
+			CompileMetrics.Timer timer = CompileMetrics.time(phase, after.getData().getClassName());
+			after.finish();
+			timer.stop();
+		});
+	}
+
+	/**
+	 * Ends every class and forgets it, so its writer and post compilers can be
+	 * collected once it is written.
+	 */
+	public static void endPostCompilers() throws IOException {
 		for (AfterCompile after : postCompilers.values()) {
 			after.end();
+			postCompilers.remove(after.getData().getClassName());
+		}
+	}
+
+	public static void endPostCompilers(PhaseScheduler scheduler) {
+		scheduler.run(postCompilers.values(), (after) -> {
+			CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.EMIT, after.getData().getClassName());
+			after.end();
+			timer.stop();
+			postCompilers.remove(after.getData().getClassName());
+		});
+	}
+
+	public static void reset() {
+		postCompilers.clear();
+		ClassData.unregisterCornflakesClasses();
+	}
+
+	public static ClassOutput getOutput() {
+		return output;
+	}
+
+	/**
+	 * Sets where finished classes are written to; null keeps their bytes in
+	 * {@link ClassData#getByteCode()} instead.
+	 */
+	public static void setOutput(ClassOutput output) {
+		Compiler.output = output;
+	}
+
+	public static boolean isComputeFrames() {
+		return computeFrames;
+	}
+
+	/**
+	 * Lets ASM compute the frames and the maximum stack and locals of the
+	 * classes compiled afterwards, instead of writing the tracked ones.
+	 */
+	public static void setComputeFrames(boolean computeFrames) {
+		Compiler.computeFrames = computeFrames;
+	}
+
+	public static boolean isVerify() {
+		return verify;
+	}
+
+	/**
+	 * Checks every finished class with {@link BytecodeVerifier} before it is
+	 * written.
+	 */
+	public static void setVerify(boolean verify) {
+		Compiler.verify = verify;
+	}
+
+	/**
+	 * @return the Java version the compiled classes are run on
+	 */
+	public static int getTarget() {
+		return target;
+	}
+
+	public static void setTarget(int target) {
+		if (target < 8) {
+			throw new CompileError("The target has to be at least Java 8");
 		}
+		Compiler.target = target;
 	}
 
 	public static void register(ClassWriter cw, ClassData data) {
@@ -0,0 +1,220 @@
+package cornflakes.compiler;
+
+public class CompilerOptions {
+	private String sourceDirectory;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean incremental;
+	private String outputPath = "bin";
+	private String cachePath;
+	private String symbolsPath;
+	private String metricsPath;
+	private boolean events;
+	private int daemonPort;
+	private int stopDaemonPort;
+	private boolean computeFrames;
+	private boolean verify;
+	private int target = 8;
+
+	public static CompilerOptions parse(String[] args) {
+		CompilerOptions options = new CompilerOptions();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			if (arg.startsWith("--parallelism=")) {
+				options.setParallelism(parseInt(arg, arg.substring(arg.indexOf('=') + 1)));
+			} else if (arg.equals("-j")) {
+				if (i + 1 >= args.length) {
+					throw new CompileError("Expecting a number after '-j'");
+				}
+				options.setParallelism(parseInt(arg, args[++i]));
+			} else if (arg.equals("--incremental")) {
+				options.setIncremental(true);
+			} else if (arg.startsWith("--cache=")) {
+				options.setIncremental(true);
+				options.setCachePath(arg.substring(arg.indexOf('=') + 1));
+			} else if (arg.startsWith("--symbols=")) {
+				options.setSymbolsPath(arg.substring(arg.indexOf('=') + 1));
+			} else if (arg.startsWith("--out=")) {
+				options.setOutputPath(arg.substring(arg.indexOf('=') + 1));
+			} else if (arg.equals("--metrics")) {
+				options.setMetricsPath("metrics.json");
+			} else if (arg.startsWith("--metrics=")) {
+				options.setMetricsPath(arg.substring(arg.indexOf('=') + 1));
+			} else if (arg.equals("--daemon")) {
+				options.setDaemonPort(CompileDaemon.DEFAULT_PORT);
+			} else if (arg.startsWith("--daemon=")) {
+				options.setDaemonPort(parseInt(arg, arg.substring(arg.indexOf('=') + 1)));
+			} else if (arg.equals("--stop-daemon")) {
+				options.setStopDaemonPort(CompileDaemon.DEFAULT_PORT);
+			} else if (arg.startsWith("--stop-daemon=")) {
+				options.setStopDaemonPort(parseInt(arg, arg.substring(arg.indexOf('=') + 1)));
+			} else if (arg.equals("--compute-frames")) {
+				options.setComputeFrames(true);
+			} else if (arg.equals("--verify")) {
+				options.setVerify(true);
+			} else if (arg.startsWith("--target=")) {
+				options.setTarget(parseInt(arg, arg.substring(arg.indexOf('=') + 1)));
+			} else if (arg.equals("--jfr")) {
+				options.setEvents(true);
+			} else if (arg.startsWith("-")) {
+				throw new CompileError("Unknown option: " + arg);
+			} else {
+				if (options.sourceDirectory != null) {
+					throw new CompileError("Unexpected argument: " + arg);
+				}
+				options.sourceDirectory = arg;
+			}
+		}
+
+		if (options.stopDaemonPort != 0) {
+			if (options.sourceDirectory != null) {
+				throw new CompileError("Stopping the daemon takes no source directory");
+			}
+			return options;
+		}
+		if (options.sourceDirectory == null) {
+			throw new CompileError("Expecting a source directory");
+		}
+		if (options.daemonPort != 0 && options.incremental) {
+			throw new CompileError("Incremental compilation is not supported through the daemon");
+		}
+		if (options.daemonPort != 0 && (options.computeFrames || options.verify || options.target != 8)) {
+			throw new CompileError("Frame computation, verification and the target are options of the daemon itself");
+		}
+
+		return options;
+	}
+
+	private static int parseInt(String option, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new CompileError("Expecting a number for option " + option + ", but got '" + value + "'");
+		}
+	}
+
+	public String getSourceDirectory() {
+		return sourceDirectory;
+	}
+
+	public void setSourceDirectory(String sourceDirectory) {
+		this.sourceDirectory = sourceDirectory;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new CompileError("The degree of parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public String getOutputPath() {
+		return outputPath;
+	}
+
+	public void setOutputPath(String outputPath) {
+		this.outputPath = outputPath;
+	}
+
+	/**
+	 * @return the signature cache, by default inside of the output directory
+	 */
+	public String getCachePath() {
+		return cachePath != null ? cachePath : outputPath + "/.cfcache";
+	}
+
+	public void setCachePath(String cachePath) {
+		this.cachePath = cachePath;
+	}
+
+	public String getSymbolsPath() {
+		return symbolsPath;
+	}
+
+	public void setSymbolsPath(String symbolsPath) {
+		this.symbolsPath = symbolsPath;
+	}
+
+	public String getMetricsPath() {
+		return metricsPath;
+	}
+
+	public void setMetricsPath(String metricsPath) {
+		this.metricsPath = metricsPath;
+	}
+
+	public boolean isEvents() {
+		return events;
+	}
+
+	public void setEvents(boolean events) {
+		this.events = events;
+	}
+
+	/**
+	 * @return the port of the daemon to compile on, or 0 to compile in this
+	 *         process
+	 */
+	public int getDaemonPort() {
+		return daemonPort;
+	}
+
+	public void setDaemonPort(int daemonPort) {
+		this.daemonPort = daemonPort;
+	}
+
+	/**
+	 * @return the port of the daemon to stop instead of compiling, or 0
+	 */
+	public int getStopDaemonPort() {
+		return stopDaemonPort;
+	}
+
+	public void setStopDaemonPort(int stopDaemonPort) {
+		this.stopDaemonPort = stopDaemonPort;
+	}
+
+	public boolean isComputeFrames() {
+		return computeFrames;
+	}
+
+	public void setComputeFrames(boolean computeFrames) {
+		this.computeFrames = computeFrames;
+	}
+
+	public boolean isVerify() {
+		return verify;
+	}
+
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * @return the Java version the compiled classes are run on, which decides
+	 *         how strings are concatenated
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	public void setTarget(int target) {
+		if (target < 8) {
+			throw new CompileError("The target has to be at least Java 8");
+		}
+		this.target = target;
+	}
+}
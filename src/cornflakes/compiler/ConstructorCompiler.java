@@ -133,8 +133,7 @@ public class ConstructorCompiler extends Compiler implements PostCompiler {
 			this.methodData.addLocalVariable();
 			HashMap<String, Integer> paramMap = new HashMap<>();
 			for (Entry<String, String> par : methodData.getParameters().entrySet()) {
-				paramMap.put(par.getKey(), this.methodData.getLocalVariables());
-				this.methodData.addLocalVariable();
+				paramMap.put(par.getKey(), this.methodData.allocateLocal(par.getValue()));
 			}
 
 			assignDefaults(m, data, this.methodData, block);
@@ -149,7 +148,7 @@ public class ConstructorCompiler extends Compiler implements PostCompiler {
 				throw new CompileError("Super must be called exactly one time before the constructor ends");
 			}
 
-			if (!gbc.returns()) {
+			if (gbc.completes()) {
 				m.visitInsn(RETURN);
 			}
 
@@ -159,14 +158,18 @@ public class ConstructorCompiler extends Compiler implements PostCompiler {
 				m.visitLocalVariable(par.getKey(), par.getValue(), null, start, post, paramMap.get(par.getKey()));
 			}
 
-			m.visitMaxs(this.methodData.getStackSize(), this.methodData.getLocalVariables());
+			m.visitMaxs(this.methodData.getStackSize(), this.methodData.getMaxLocals());
 			m.visitEnd();
 		}
 	}
 
 	public void write() {
 		write = true;
+
+		CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.BODIES, data.getClassName(),
+				"<init>" + methodData.getSignature());
 		compile(data, cw, body, lines);
+		timer.stop();
 	}
 
 	public void compileDefault(ClassData data, ClassWriter cw) {
@@ -197,12 +200,7 @@ public class ConstructorCompiler extends Compiler implements PostCompiler {
 				String type = datum.getType();
 
 				if (Types.isPrimitive(type) || type.equals("Ljava/lang/String;")) {
-					int push = Types.getOpcode(Types.PUSH, type);
-					if (push == LDC) {
-						m.visitLdcInsn(datum.getProposedData());
-					} else {
-						m.visitVarInsn(push, Integer.parseInt(datum.getProposedData().toString()));
-					}
+					Types.pushConstant(m, datum.getProposedData());
 					mData.ics();
 
 					m.visitFieldInsn(PUTFIELD, data.getClassName(), datum.getName(), datum.getType());
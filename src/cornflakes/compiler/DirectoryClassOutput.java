@@ -0,0 +1,33 @@
+package cornflakes.compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every class to its own file in a directory tree following the
+ * package names.
+ */
+public class DirectoryClassOutput implements ClassOutput {
+	private Path root;
+
+	public DirectoryClassOutput(Path root) throws IOException {
+		this.root = root;
+		Files.createDirectories(root);
+	}
+
+	@Override
+	public void write(String className, byte[] bytes) throws IOException {
+		Path file = root.resolve(className + ".class");
+		Files.createDirectories(file.getParent());
+		Files.write(file, bytes);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+}
@@ -0,0 +1,218 @@
+package cornflakes.compiler;
+
+import java.util.List;
+
+import org.objectweb.asm.tree.InsnList;
+
+/**
+ * A typed expression tree. Expressions with operators are parsed into it once
+ * by {@link ExpressionParser}, rewritten by {@link ExpressionOptimizer} and
+ * lowered to bytecode by {@link ExpressionWriter}.
+ */
+public abstract class Expression {
+	private String type;
+
+	protected Expression(String type) {
+		this.type = type;
+	}
+
+	/**
+	 * @return the signature of the value the expression pushes, or null if it
+	 *         could not be resolved
+	 */
+	public String getType() {
+		return type;
+	}
+
+	public static class Constant extends Expression {
+		private Object value;
+
+		public Constant(Object value) {
+			super(Types.getTypeSignature(value.getClass()));
+			this.value = value;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * An operand without operators on its top level, such as a variable, a
+	 * field or a call, which is compiled once by the
+	 * {@link ExpressionCompiler} when it is parsed.
+	 */
+	public static class Term extends Expression {
+		private String source;
+		private InsnList code;
+		private int stack;
+
+		public Term(String source, String type, InsnList code, int stack) {
+			super(type);
+			this.source = source;
+			this.code = code;
+			this.stack = stack;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		/**
+		 * @return the instructions which push the value of the term
+		 */
+		public InsnList getCode() {
+			return code;
+		}
+
+		/**
+		 * @return the most stack slots the code of the term uses
+		 */
+		public int getStack() {
+			return stack;
+		}
+
+		@Override
+		public String toString() {
+			return source;
+		}
+	}
+
+	/**
+	 * A binary operator, identified by its {@link Lexer} token kind.
+	 */
+	public static class Operator extends Expression {
+		/**
+		 * Shifts the left operand by the number of bits given by the right
+		 * one, which has no token of its own.
+		 */
+		public static final int SHIFT_LEFT = -1;
+
+		private int operator;
+		private Expression left;
+		private Expression right;
+
+		public Operator(int operator, Expression left, Expression right) {
+			super(operator == SHIFT_LEFT ? promote(left.getType()) : getResultType(operator, left.getType(),
+					right.getType()));
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		/**
+		 * Both operands are widened to the type of the result the way Java
+		 * does: to double, float or long if either operand is one, otherwise
+		 * to int. Bitwise operators also take two booleans, but no floating
+		 * point operands.
+		 *
+		 * @return the type of the result, or null if the operator can not be
+		 *         applied to the operands
+		 */
+		public static String getResultType(int operator, String left, String right) {
+			if (operator == Lexer.AND || operator == Lexer.OR || operator == Lexer.XOR) {
+				if ("Z".equals(left) && "Z".equals(right)) {
+					return "Z";
+				}
+			}
+
+			left = promote(left);
+			right = promote(right);
+			if (left == null || right == null || left.equals("Z") || right.equals("Z")) {
+				return null;
+			}
+
+			String type;
+			if (left.equals("D") || right.equals("D")) {
+				type = "D";
+			} else if (left.equals("F") || right.equals("F")) {
+				type = "F";
+			} else if (left.equals("J") || right.equals("J")) {
+				type = "J";
+			} else {
+				type = "I";
+			}
+
+			if ((type.equals("D") || type.equals("F"))
+					&& (operator == Lexer.AND || operator == Lexer.OR || operator == Lexer.XOR)) {
+				return null;
+			}
+			return type;
+		}
+
+		/**
+		 * @return the type a primitive operand is computed in, as bytes,
+		 *         shorts and chars are computed as ints, or null if it is not
+		 *         primitive
+		 */
+		public static String promote(String type) {
+			if (type == null) {
+				return null;
+			}
+
+			switch (type) {
+				case "B":
+				case "S":
+				case "C":
+				case "I":
+					return "I";
+				case "Z":
+				case "J":
+				case "F":
+				case "D":
+					return type;
+				default:
+					return null;
+			}
+		}
+
+		public int getOperator() {
+			return operator;
+		}
+
+		public Expression getLeft() {
+			return left;
+		}
+
+		public Expression getRight() {
+			return right;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " " + operator + " " + right + ")";
+		}
+	}
+
+	/**
+	 * Joins the string values of its parts. A chain of '+' becomes one once
+	 * any of its operands is a string, and every operand of the chain is
+	 * then appended in order.
+	 */
+	public static class Concat extends Expression {
+		private List<Expression> parts;
+
+		public Concat(List<Expression> parts) {
+			super("Ljava/lang/String;");
+			this.parts = parts;
+		}
+
+		public List<Expression> getParts() {
+			return parts;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder str = new StringBuilder("(");
+			for (int i = 0; i < parts.size(); i++) {
+				str.append(i == 0 ? "" : " + ").append(parts.get(i));
+			}
+			return str.append(")").toString();
+		}
+	}
+}
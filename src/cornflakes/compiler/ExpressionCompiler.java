@@ -18,6 +18,8 @@ public class ExpressionCompiler implements GenericCompiler {
 	public static final int NEW_ARRAY = 7;
 	public static final int TYPEOF = 0;
 
+	private static final String CONSOLE = "cornflakes/lang/Console";
+
 	private MethodData data;
 	private boolean write;
 	private boolean loadVariableReference = true;
@@ -54,28 +56,41 @@ public class ExpressionCompiler implements GenericCompiler {
 			return;
 		}
 
-		int end = body.length();
-		int opens = 0;
-		for (int i = 0; i < body.length(); i++) {
-			char c = body.charAt(i);
-			if (c == '(') {
-				opens++;
-			} else if (c == ')') {
-				opens--;
-			}
-			if (opens == 0) {
-				if (c == '.') {
-					if (!(body.charAt(i + 1) >= '0' && body.charAt(i + 1) <= '9')) {
-						end = i;
-						break;
+		TokenStream tokens = Lexer.tokenize(body);
+		if (last == null && MathExpressionCompiler.indexOfOperator(tokens) != -1) {
+			// constant terms may reference fields of other classes, which can
+			// not be split at their operators once they are split at the dot
+			Expression.Constant constant = new ExpressionParser(data, this.data, block, allowBoolean)
+					.parseConstant(body);
+			if (constant != null) {
+				if (this.write) {
+					Types.pushConstant(m, constant.getValue());
+					if (this.data != null) {
+						this.data.ics();
 					}
 				}
+
+				referenceName = body;
+				referenceOwner = data;
+				referenceSignature = constant.getType();
+				referenceType = MATH_EXPRESSION;
+				math = true;
+				return;
 			}
 		}
+
+		// operators bind looser than member accesses, so a term with a binary
+		// operator on its top level is split at the operator first
+		boolean operator = last == null && MathExpressionCompiler.indexOfOperator(tokens) > 0;
+
+		int dot = tokens.indexOf(Lexer.DOT);
+		int end = dot == -1 || operator ? body.length() : tokens.offset(dot);
 		String part = body.substring(0, end).trim();
 
 		boolean next = false;
-		if (part.equals("this")) {
+		if (operator) {
+			next = compileOperators(data, m, block, body, part);
+		} else if (part.equals("this")) {
 			if (this.data.hasModifier(ACC_STATIC)) {
 				throw new CompileError("Cannot access this from a static context");
 			}
@@ -127,11 +142,16 @@ public class ExpressionCompiler implements GenericCompiler {
 					}
 
 					if (!next && !thisType) {
-						if (!name.equals("array")) {
+						if (name.equals("offheap")) {
+							compileOffHeap(data, m, block, part);
+							next = true;
+						} else if (!name.equals("array")) {
 							String resolved = null;
 							try {
-								if (Strings.contains(name, "<")) {
-									name = name.substring(0, name.indexOf('<'));
+								TokenStream nameTokens = Lexer.tokenize(name);
+								int generic = nameTokens.indexOf(Lexer.LESS_THAN);
+								if (generic != -1) {
+									name = nameTokens.before(generic);
 								}
 								resolved = data.resolveClass(name);
 							} catch (CompileError e) {
@@ -185,57 +205,7 @@ public class ExpressionCompiler implements GenericCompiler {
 								arrayIndex, end == body.length());
 						next = true;
 					} else {
-						boolean math = true;
-						if (allowBoolean) {
-							BooleanExpressionCompiler compiler = new BooleanExpressionCompiler(this.data, null, false);
-							compiler.compile(data, m, block, part, new String[] { part });
-
-							if (compiler.isValid()) {
-								Label iconst = new Label();
-								Label label = new Label();
-
-								compiler.setWrite(this.write);
-								compiler.setEnd(iconst);
-
-								compiler.compile(data, m, block, part, new String[] { part });
-								m.visitInsn(ICONST_1);
-								m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(),
-										null);
-								m.visitJumpInsn(GOTO, label);
-								m.visitLabel(iconst);
-								m.visitInsn(ICONST_0);
-
-								m.visitLabel(label);
-
-								referenceName = body;
-								referenceOwner = data;
-								referenceSignature = "Z";
-								referenceType = BOOLEAN_EXPRESSION;
-								next = true;
-								math = false;
-							}
-						}
-						if (math) {
-							if (source instanceof BooleanExpressionCompiler) {
-								next = true;
-							} else {
-								MathExpressionCompiler compiler = new MathExpressionCompiler(this.data,
-										this.allowBoolean, false);
-								compiler.compile(data, m, block, part, new String[] { part });
-
-								if (compiler.isValid()) {
-									compiler.setWrite(this.write);
-									compiler.compile(data, m, block, part, new String[] { part });
-
-									referenceName = body;
-									referenceOwner = data;
-									referenceSignature = compiler.getResultType();
-									referenceType = MATH_EXPRESSION;
-									this.math = true;
-									next = true;
-								}
-							}
-						}
+						next = compileOperators(data, m, block, body, part);
 					}
 				}
 			}
@@ -297,6 +267,68 @@ public class ExpressionCompiler implements GenericCompiler {
 
 	}
 
+	/**
+	 * Compiles a term with a comparison or a math operator on its top level.
+	 *
+	 * @return whether the term was valid
+	 */
+	/**
+	 * Compiles a term with operators once, as a comparison if it has a
+	 * comparison operator on its top level and as a math expression
+	 * otherwise.
+	 *
+	 * @return false if the term has no operator, or is not valid while
+	 *         nothing is written
+	 */
+	private boolean compileOperators(ClassData data, MethodVisitor m, Block block, String body, String part) {
+		TokenStream tokens = Lexer.tokenize(part);
+		if (allowBoolean && BooleanExpressionCompiler.indexOfOperator(tokens) != -1) {
+			Label iconst = new Label();
+			Label label = new Label();
+
+			BooleanExpressionCompiler compiler = new BooleanExpressionCompiler(this.data, iconst, this.write);
+			compiler.compile(data, m, block, part, new String[] { part });
+
+			if (compiler.isValid()) {
+				m.visitInsn(ICONST_1);
+				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+				m.visitJumpInsn(GOTO, label);
+				m.visitLabel(iconst);
+				m.visitInsn(ICONST_0);
+
+				m.visitLabel(label);
+
+				referenceName = body;
+				referenceOwner = data;
+				referenceSignature = "Z";
+				referenceType = BOOLEAN_EXPRESSION;
+				return true;
+			}
+			return false;
+		}
+
+		if (source instanceof BooleanExpressionCompiler) {
+			return true;
+		}
+
+		if (!MathExpressionCompiler.isMath(tokens)) {
+			return false;
+		}
+
+		MathExpressionCompiler compiler = new MathExpressionCompiler(this.data, this.allowBoolean, this.write);
+		compiler.compile(data, m, block, part, new String[] { part });
+		if (!compiler.isValid()) {
+			return false;
+		}
+
+		referenceName = body;
+		referenceOwner = data;
+		referenceSignature = compiler.getResultType();
+		referenceType = MATH_EXPRESSION;
+		this.math = true;
+		return true;
+	}
+
 	private void compileVariableReference(ExpressionCompiler last, int source, String containerClass,
 			ClassData containerData, ClassData data, MethodVisitor m, Block block, String body, String arrayIndex,
 			boolean isLast) {
@@ -341,39 +373,28 @@ public class ExpressionCompiler implements GenericCompiler {
 				throw new CompileError(e);
 			}
 
-			MethodData indexer = typeClass != null && typeClass.isIndexedClass() ? typeClass.getMethods("_index_")[0]
-					: null;
+			MethodData indexer = typeClass != null && typeClass.isIndexedClass() ? getIndexer(typeClass, 1) : null;
+			if (arrayIndex != null && typeClass != null && typeClass.isIndexedClass() && indexer == null) {
+				throw new CompileError(typeClass.getClassName() + " has no indexer with 1 parameter to read an element");
+			}
 			if (write) {
 				if (!(!loadVariableReference && isLast)) {
 					int op = Types.getOpcode(Types.LOAD, type);
 					m.visitVarInsn(op, local.getIndex());
 
 					if (arrayIndex != null) {
-						String idxType = Types.getType(arrayIndex, null);
-						if (idxType == null) {
-							ExpressionCompiler compiler = new ExpressionCompiler(true, this.data);
-							compiler.compile(data, m, block, arrayIndex, new String[] { arrayIndex });
-
-							try {
-								if (typeClass.isSubclassOf("java.util.List") || type.startsWith("[")) {
-									if (!compiler.getReferenceSignature().equals("I")) {
-										throw new CompileError("Arrays can only be indexed by integers");
-									}
-								}
-							} catch (ClassNotFoundException e) {
-								throw new CompileError(e);
-							}
-						} else {
-							if (idxType.equals("string")) {
-								m.visitLdcInsn(Types.parseLiteral("string", arrayIndex));
-							} else {
-								int x = Integer.parseInt(arrayIndex);
-								if (x < 0) {
-									throw new CompileError("Array literal indexes must be greater than or equal to 0");
-								}
-								m.visitLdcInsn(x);
+						String indexType = null;
+						try {
+							if (indexer != null) {
+								indexType = getIndexType(indexer);
+							} else if (type.startsWith("[") || type.equals("Ljava/lang/String;")
+									|| typeClass.isSubclassOf("java.util.List")) {
+								indexType = "I";
 							}
+						} catch (ClassNotFoundException e) {
+							throw new CompileError(e);
 						}
+						compileIndex(data, m, block, arrayIndex, indexType);
 
 						try {
 							if (typeClass.isIndexedClass()) {
@@ -429,6 +450,105 @@ public class ExpressionCompiler implements GenericCompiler {
 		}
 	}
 
+	/**
+	 * @return the indexer method which reads (1 parameter) or writes (2
+	 *         parameters) an element of the given class, or null if it has
+	 *         none
+	 */
+	static MethodData getIndexer(ClassData cls, int parameters) {
+		for (MethodData method : cls.getMethods("_index_")) {
+			if (method.getParameters().size() == parameters) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	static String getIndexType(MethodData indexer) {
+		return indexer.getParameters().values().iterator().next();
+	}
+
+	/**
+	 * Pushes an index, checked against the type the indexed value takes if it
+	 * is known. Int indexes are widened for indexers which take longs.
+	 */
+	void compileIndex(ClassData data, MethodVisitor m, Block block, String index, String indexType) {
+		String literal = Types.getType(index, null);
+		if (literal == null) {
+			ExpressionCompiler compiler = new ExpressionCompiler(this.write, this.data);
+			compiler.compile(data, m, block, index, new String[] { index });
+
+			String signature = compiler.getReferenceSignature();
+			if ("J".equals(indexType) && "I".equals(signature)) {
+				if (write) {
+					m.visitInsn(I2L);
+				}
+			} else if (indexType != null && !Types.isSuitable(indexType, signature)) {
+				throw new CompileError("Expecting an index of type " + indexType + ", but " + signature + " was given");
+			}
+		} else if (write) {
+			if (literal.equals("string")) {
+				Types.pushConstant(m, Types.parseLiteral("string", index));
+			} else {
+				long x = "J".equals(indexType) ? Long.parseLong(index) : Integer.parseInt(index);
+				if (x < 0) {
+					throw new CompileError("Array literal indexes must be greater than or equal to 0");
+				}
+				Types.pushConstant(m, "J".equals(indexType) ? (Object) x : (Object) (int) x);
+			}
+			this.data.ics();
+		}
+	}
+
+	/**
+	 * Allocates an off-heap array, written as <code>offheap(type, size)</code>.
+	 */
+	private void compileOffHeap(ClassData data, MethodVisitor m, Block block, String body) {
+		String[] split = getParameters(body.substring(body.indexOf('(') + 1, body.lastIndexOf(')')).trim());
+		if (split.length != 2) {
+			throw new CompileError("Off-heap array declarations should be in the form 'offheap(type, size)'");
+		}
+
+		String owner;
+		switch (data.resolveClass(split[0].trim())) {
+			case "B":
+				owner = "cornflakes/lang/NativeByteArray";
+				break;
+			case "I":
+				owner = "cornflakes/lang/NativeIntArray";
+				break;
+			case "J":
+				owner = "cornflakes/lang/NativeLongArray";
+				break;
+			case "F":
+				owner = "cornflakes/lang/NativeFloatArray";
+				break;
+			case "D":
+				owner = "cornflakes/lang/NativeDoubleArray";
+				break;
+			default:
+				throw new CompileError("Off-heap arrays can only hold byte, i32, i64, f32 or f64 values");
+		}
+
+		if (write) {
+			m.visitTypeInsn(NEW, owner);
+			m.visitInsn(DUP);
+			this.data.ics();
+			this.data.ics();
+		}
+		compileIndex(data, m, block, split[1].trim(), "J");
+		if (write) {
+			m.visitMethodInsn(INVOKESPECIAL, owner, "<init>", "(J)V", false);
+			this.data.dcs();
+			this.data.dcs();
+		}
+
+		referenceSignature = "L" + owner + ";";
+		referenceType = NEW_ARRAY;
+		referenceName = "offheap";
+		referenceOwner = data;
+	}
+
 	private void compileConstructorCall(String containerClass, ClassData containerData, ClassData data, MethodVisitor m,
 			Block block, String body, String clazz) throws ClassNotFoundException {
 		String pars = body.substring(body.indexOf('(') + 1, body.lastIndexOf(')')).trim();
@@ -486,7 +606,7 @@ public class ExpressionCompiler implements GenericCompiler {
 				if (x < 0) {
 					throw new CompileError("Array literal indexes must be greater than or equal to 0");
 				}
-				m.visitLdcInsn(x);
+				Types.pushConstant(m, x);
 			} catch (Exception e) {
 				ExpressionCompiler compiler = new ExpressionCompiler(true, this.data);
 				compiler.compile(data, m, block, size, new String[] { size });
@@ -563,7 +683,7 @@ public class ExpressionCompiler implements GenericCompiler {
 
 				if (type != null) {
 					if (write) {
-						m.visitLdcInsn(Types.parseLiteral(type, par));
+						Types.pushConstant(m, Types.parseLiteral(type, par));
 
 						if (this.data != null)
 							this.data.ics();
@@ -608,6 +728,13 @@ public class ExpressionCompiler implements GenericCompiler {
 			referenceType = TYPEOF;
 			referenceName = "typeof";
 			referenceOwner = containerData;
+		} else if (!superCall && isConsoleTemplate(containerData, before, split)) {
+			compileConsoleCall(data, m, block, before.equals("println"), split);
+
+			referenceSignature = "V";
+			referenceType = METHOD;
+			referenceName = before;
+			referenceOwner = containerData;
 		} else {
 			MethodData[] methods = superCall ? ClassData.forName(containerData.getParentName()).getConstructors()
 					: containerData.getAllMethods(before);
@@ -671,7 +798,7 @@ public class ExpressionCompiler implements GenericCompiler {
 
 				if (type != null) {
 					if (write) {
-						m.visitLdcInsn(Types.parseLiteral(type, par));
+						Types.pushConstant(m, Types.parseLiteral(type, par));
 
 						if (this.data != null)
 							this.data.ics();
@@ -725,33 +852,153 @@ public class ExpressionCompiler implements GenericCompiler {
 		}
 	}
 
-	private String[] getParameters(String pars) {
-		List<String> splitList = new ArrayList<>();
-		if (!pars.isEmpty()) {
-			int open = 0;
-			boolean quote = false;
-			int last = 0;
-			for (int i = 0; i < pars.length(); i++) {
-				char c = pars.charAt(i);
-				if (c == '(') {
-					open++;
-				} else if (c == ')') {
-					open--;
+	private static boolean isConsoleTemplate(ClassData containerData, String name, String[] pars) {
+		return containerData.getClassName().equals(CONSOLE) && (name.equals("println") || name.equals("print"))
+				&& pars.length > 0 && "string".equals(Types.getType(pars[0].trim(), ""));
+	}
+
+	/**
+	 * Splits the literal template of a Console call while compiling. Every
+	 * argument is appended to the buffer of the Console with its own type, so
+	 * no array is built, nothing is boxed and the template is not parsed at
+	 * runtime. The arguments are evaluated in order into locals before the
+	 * buffer is taken, objects as their string, so an argument which prints
+	 * does not write into the same buffer.
+	 */
+	private void compileConsoleCall(ClassData data, MethodVisitor m, Block block, boolean line, String[] pars)
+			throws ClassNotFoundException {
+		String template = (String) Types.parseLiteral("string", pars[0].trim());
+		String[] args = new String[pars.length - 1];
+		String[] constants = new String[args.length];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = pars[i + 1].trim();
+
+			String type = Types.getType(args[i], "");
+			if (args[i].equals("null")) {
+				constants[i] = "null";
+			} else if (type != null) {
+				constants[i] = String.valueOf(Types.parseLiteral(type, args[i]));
+			}
+		}
+
+		String[] types = new String[args.length];
+		int[] slots = new int[args.length];
+		int first = this.data.getLocalVariables();
+		for (int i = 0; i < args.length; i++) {
+			if (constants[i] == null) {
+				types[i] = ExpressionWriter.getAppendType(compileConsoleArgument(data, m, block, args[i]));
+				if (types[i].equals("Ljava/lang/Object;")) {
+					if (write) {
+						m.visitMethodInsn(INVOKESTATIC, "java/lang/String", "valueOf",
+								"(Ljava/lang/Object;)Ljava/lang/String;", false);
+					}
+					types[i] = "Ljava/lang/String;";
 				}
-				if (c == '"') {
-					quote = !quote;
+
+				if (write) {
+					slots[i] = this.data.allocateLocal(types[i]);
+					m.visitVarInsn(Types.getOpcode(Types.STORE, types[i]), slots[i]);
+					this.data.dcs();
 				}
+			}
+		}
 
-				if (open == 0 && !quote) {
-					if (c == ',') {
-						splitList.add(pars.substring(last, i).trim());
-						last = i + 1;
+		if (write) {
+			m.visitMethodInsn(INVOKESTATIC, CONSOLE, "buffer", "()Ljava/lang/StringBuilder;", false);
+			this.data.ics();
+		}
+		for (Object part : splitTemplate(template, constants)) {
+			String type;
+			if (part instanceof String) {
+				if (write) {
+					m.visitLdcInsn(part);
+					this.data.ics();
+				}
+				type = "Ljava/lang/String;";
+			} else {
+				int index = (Integer) part;
+				if (write) {
+					m.visitVarInsn(Types.getOpcode(Types.LOAD, types[index]), slots[index]);
+					this.data.ics();
+				}
+				type = types[index];
+			}
+
+			if (write) {
+				m.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
+						"(" + type + ")Ljava/lang/StringBuilder;", false);
+				this.data.dcs();
+			}
+		}
+
+		if (write) {
+			m.visitInsn(line ? ICONST_1 : ICONST_0);
+			m.visitMethodInsn(INVOKESTATIC, CONSOLE, "write", "(Ljava/lang/StringBuilder;Z)V", false);
+			this.data.setLocalVariables(first);
+			this.data.dcs();
+		}
+	}
+
+	private String compileConsoleArgument(ClassData data, MethodVisitor m, Block block, String arg) {
+		ExpressionCompiler compiler = new ExpressionCompiler(this.write, this.data);
+		compiler.compile(data, m, block, arg, new String[] { arg });
+
+		String type = compiler.getReferenceSignature();
+		if (type == null || type.equals("V")) {
+			throw new CompileError("Cannot print the value of " + arg);
+		}
+		return Types.padSignature(type);
+	}
+
+	/**
+	 * @return the literal text of the template as strings, and the index of
+	 *         every argument which is not a constant as integers, in order
+	 */
+	private static List<Object> splitTemplate(String template, String[] constants) {
+		List<Object> parts = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+
+		int start = 0;
+		int open = template.indexOf('{');
+		while (open != -1) {
+			int close = open + 1;
+			int index = 0;
+			while (close < template.length() && close - open <= 9 && Character.isDigit(template.charAt(close))) {
+				index = index * 10 + (template.charAt(close) - '0');
+				close++;
+			}
+
+			if (close > open + 1 && close < template.length() && template.charAt(close) == '}') {
+				text.append(template, start, open);
+				if (index >= constants.length) {
+					text.append('{').append(index).append('}');
+				} else if (constants[index] != null) {
+					text.append(constants[index]);
+				} else {
+					if (text.length() > 0) {
+						parts.add(text.toString());
+						text.setLength(0);
 					}
+					parts.add(index);
 				}
+				start = close + 1;
+				open = template.indexOf('{', start);
+			} else {
+				open = template.indexOf('{', open + 1);
 			}
-			splitList.add(pars.substring(last, pars.length()).trim());
 		}
-		return splitList.toArray(new String[splitList.size()]);
+		text.append(template, start, template.length());
+		if (text.length() > 0) {
+			parts.add(text.toString());
+		}
+		return parts;
+	}
+
+	private String[] getParameters(String pars) {
+		if (pars.isEmpty()) {
+			return new String[0];
+		}
+		return Lexer.tokenize(pars).split(Lexer.COMMA);
 	}
 
 	public String getReferenceSignature() {
@@ -0,0 +1,258 @@
+package cornflakes.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites {@link Expression} trees before they are written: operators on
+ * constants are evaluated, identities are removed, multiplications by a
+ * power of two become shifts and constant parts of a concatenation are
+ * joined. Every rewrite leaves the value and the type of the expression as
+ * they are.
+ */
+public class ExpressionOptimizer {
+	public static Expression optimize(Expression expression) {
+		if (expression instanceof Expression.Concat) {
+			return optimize((Expression.Concat) expression);
+		}
+		if (!(expression instanceof Expression.Operator)) {
+			return expression;
+		}
+
+		Expression.Operator operator = (Expression.Operator) expression;
+		int kind = operator.getOperator();
+		Expression left = optimize(operator.getLeft());
+		Expression right = optimize(operator.getRight());
+
+		boolean leftConstant = left instanceof Expression.Constant;
+		boolean rightConstant = right instanceof Expression.Constant;
+		if (leftConstant && rightConstant) {
+			Object value = evaluate(kind, ((Expression.Constant) left).getValue(),
+					((Expression.Constant) right).getValue());
+			if (value != null) {
+				return new Expression.Constant(value);
+			}
+		} else if (rightConstant || leftConstant && isCommutative(kind)) {
+			// the operand is written before the constant, which only matters
+			// for operators whose operands can not be swapped
+			Expression operand = rightConstant ? left : right;
+			Object constant = ((Expression.Constant) (rightConstant ? right : left)).getValue();
+
+			// a constant is widened ahead, unless the operand has to be
+			String type = Expression.Operator.getResultType(kind, operand.getType(),
+					(rightConstant ? right : left).getType());
+			if (type != null && type.equals(Expression.Operator.promote(operand.getType()))) {
+				constant = convert(constant, type);
+			}
+
+			Expression simplified = simplify(kind, operand, constant);
+			if (simplified != null) {
+				return simplified;
+			}
+			return new Expression.Operator(kind, operand, new Expression.Constant(constant));
+		}
+
+		if (left == operator.getLeft() && right == operator.getRight()) {
+			return operator;
+		}
+		return new Expression.Operator(kind, left, right);
+	}
+
+	/**
+	 * Joins neighbouring constants into one string. Floating point constants
+	 * are left to the runtime, as their string form depends on the JVM.
+	 */
+	private static Expression optimize(Expression.Concat concat) {
+		List<Expression> parts = new ArrayList<>();
+		StringBuilder constant = null;
+		for (Expression part : concat.getParts()) {
+			part = optimize(part);
+
+			Object value = part instanceof Expression.Constant ? ((Expression.Constant) part).getValue() : null;
+			if (value != null && !(value instanceof Float) && !(value instanceof Double)) {
+				if (constant == null) {
+					constant = new StringBuilder();
+				}
+				constant.append(value);
+			} else {
+				if (constant != null && constant.length() > 0) {
+					parts.add(new Expression.Constant(constant.toString()));
+				}
+				constant = null;
+				parts.add(part);
+			}
+		}
+		if (constant != null && (constant.length() > 0 || parts.isEmpty())) {
+			parts.add(new Expression.Constant(constant.toString()));
+		}
+
+		if (parts.size() == 1 && parts.get(0) instanceof Expression.Constant
+				&& ((Expression.Constant) parts.get(0)).getValue() instanceof String) {
+			return parts.get(0);
+		}
+		return new Expression.Concat(parts);
+	}
+
+	/**
+	 * Applies the identities which leave the operand as it is, and replaces
+	 * multiplications of integers by a power of two with a shift. The constant
+	 * is the right operand, unless the operator is commutative.
+	 *
+	 * @return the replacement, or null if there is none
+	 */
+	private static Expression simplify(int kind, Expression operand, Object constant) {
+		String type = operand.getType();
+		if (type == null) {
+			return null;
+		}
+
+		// the result has to keep the type of the operand
+		boolean integral = type.equals("I") && constant instanceof Integer
+				|| type.equals("J") && (constant instanceof Integer || constant instanceof Long);
+
+		if (integral) {
+			long value = ((Number) constant).longValue();
+			if (value == 0 && (kind == Lexer.ADD || kind == Lexer.SUBTRACT || kind == Lexer.OR || kind == Lexer.XOR)
+					|| value == 1 && (kind == Lexer.MULTIPLY || kind == Lexer.DIVIDE)
+					|| value == -1 && kind == Lexer.AND) {
+				return operand;
+			}
+
+			if (kind == Lexer.MULTIPLY && value > 1 && (value & (value - 1)) == 0) {
+				return new Expression.Operator(Expression.Operator.SHIFT_LEFT, operand,
+						new Expression.Constant(Long.numberOfTrailingZeros(value)));
+			}
+		} else if (type.equals("F") && constant instanceof Float || type.equals("D") && constant instanceof Double) {
+			double value = ((Number) constant).doubleValue();
+
+			// x + 0 is not an identity, as -0.0 + 0.0 is 0.0
+			if (value == 1 && (kind == Lexer.MULTIPLY || kind == Lexer.DIVIDE)
+					|| kind == Lexer.SUBTRACT && Double.doubleToRawLongBits(value) == 0) {
+				return operand;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return a numeric constant converted to the given primitive type
+	 */
+	private static Object convert(Object value, String type) {
+		Number number;
+		if (value instanceof Character) {
+			number = (int) (Character) value;
+		} else if (value instanceof Number) {
+			number = (Number) value;
+		} else {
+			return value;
+		}
+
+		switch (type) {
+			case "I":
+				return number.intValue();
+			case "J":
+				return number.longValue();
+			case "F":
+				return number.floatValue();
+			case "D":
+				return number.doubleValue();
+			default:
+				return value;
+		}
+	}
+
+	private static boolean isCommutative(int kind) {
+		return kind == Lexer.ADD || kind == Lexer.MULTIPLY || kind == Lexer.AND || kind == Lexer.OR
+				|| kind == Lexer.XOR;
+	}
+
+	/**
+	 * Evaluates an operator on two constants, which are widened to the type of
+	 * the result first.
+	 *
+	 * @return the result, or null if it has to be computed at runtime
+	 */
+	private static Object evaluate(int kind, Object left, Object right) {
+		String type = Expression.Operator.getResultType(kind, Types.getTypeSignature(left.getClass()),
+				Types.getTypeSignature(right.getClass()));
+		if (type == null) {
+			return null;
+		}
+
+		left = convert(left, type);
+		right = convert(right, type);
+		if (left.getClass() != right.getClass()) {
+			return null;
+		}
+
+		if (left instanceof Integer) {
+			int a = (Integer) left;
+			int b = (Integer) right;
+			switch (kind) {
+				case Lexer.ADD:
+					return a + b;
+				case Lexer.SUBTRACT:
+					return a - b;
+				case Lexer.MULTIPLY:
+					return a * b;
+				case Lexer.DIVIDE:
+					// division by zero has to fail at runtime
+					return b == 0 ? null : a / b;
+				case Lexer.AND:
+					return a & b;
+				case Lexer.OR:
+					return a | b;
+				case Lexer.XOR:
+					return a ^ b;
+			}
+		} else if (left instanceof Long) {
+			long a = (Long) left;
+			long b = (Long) right;
+			switch (kind) {
+				case Lexer.ADD:
+					return a + b;
+				case Lexer.SUBTRACT:
+					return a - b;
+				case Lexer.MULTIPLY:
+					return a * b;
+				case Lexer.DIVIDE:
+					return b == 0 ? null : a / b;
+				case Lexer.AND:
+					return a & b;
+				case Lexer.OR:
+					return a | b;
+				case Lexer.XOR:
+					return a ^ b;
+			}
+		} else if (left instanceof Float) {
+			float a = (Float) left;
+			float b = (Float) right;
+			switch (kind) {
+				case Lexer.ADD:
+					return a + b;
+				case Lexer.SUBTRACT:
+					return a - b;
+				case Lexer.MULTIPLY:
+					return a * b;
+				case Lexer.DIVIDE:
+					return a / b;
+			}
+		} else if (left instanceof Double) {
+			double a = (Double) left;
+			double b = (Double) right;
+			switch (kind) {
+				case Lexer.ADD:
+					return a + b;
+				case Lexer.SUBTRACT:
+					return a - b;
+				case Lexer.MULTIPLY:
+					return a * b;
+				case Lexer.DIVIDE:
+					return a / b;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,292 @@
+package cornflakes.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Builds the {@link Expression} tree of a term. Terms are split at their
+ * operators the same way the expression compilers always split them, and
+ * every operand is resolved once: literals and constant fields become
+ * constants, everything else is compiled by the {@link ExpressionCompiler}
+ * into a {@link Expression.Term} which keeps its type and its instructions.
+ */
+public class ExpressionParser {
+	private ClassData data;
+	private MethodData method;
+	private Block block;
+	private boolean allowBoolean;
+
+	public ExpressionParser(ClassData data, MethodData method, Block block, boolean allowBoolean) {
+		this.data = data;
+		this.method = method;
+		this.block = block;
+		this.allowBoolean = allowBoolean;
+	}
+
+	/**
+	 * @return the tree of a term with a math operator on its top level, or
+	 *         null if it has none
+	 */
+	public Expression parseMath(String term) {
+		TokenStream tokens = Lexer.tokenize(term);
+		if (MathExpressionCompiler.indexOfOperator(tokens) == -1) {
+			return null;
+		}
+		return toConcat(parse(tokens, false));
+	}
+
+	/**
+	 * Parses an operand of a comparison. Operands which contain comparisons
+	 * themselves are left to the {@link ExpressionCompiler}.
+	 */
+	public Expression parseOperand(String term) {
+		TokenStream tokens = Lexer.tokenize(term);
+		if (BooleanExpressionCompiler.indexOfOperator(tokens) != -1) {
+			return getTerm(term.trim());
+		}
+		return parse(tokens, false);
+	}
+
+	/**
+	 * @return the value of a term made up of numeric literals, constant
+	 *         fields and operators, or null if it has any other operand or
+	 *         can not be evaluated
+	 */
+	public Expression.Constant parseConstant(String term) {
+		Expression expression = parse(Lexer.tokenize(term), true);
+		if (expression == null) {
+			return null;
+		}
+
+		expression = ExpressionOptimizer.optimize(expression);
+		return expression instanceof Expression.Constant ? (Expression.Constant) expression : null;
+	}
+
+	/**
+	 * Evaluates a condition the way the {@link BooleanExpressionCompiler}
+	 * splits it. Boolean literals, boolean constant fields, comparisons of
+	 * int constants and 'and' / 'or' of those have a value.
+	 *
+	 * @return the value of the condition, or null if it is only known at
+	 *         runtime
+	 */
+	public Boolean parseCondition(String term) {
+		TokenStream tokens = Lexer.tokenize(term);
+		int operator = BooleanExpressionCompiler.indexOfOperator(tokens);
+		if (operator == -1) {
+			String source = term.trim();
+			if (source.equals("true") || source.equals("false")) {
+				return Boolean.valueOf(source);
+			}
+
+			FieldData field = getConstantField(tokens);
+			if (field != null && field.getConstantValue() instanceof Boolean) {
+				return (Boolean) field.getConstantValue();
+			}
+			return null;
+		}
+
+		int kind = tokens.kind(operator);
+		if (kind == Lexer.LOGICAL_AND || kind == Lexer.LOGICAL_OR) {
+			// both sides are always evaluated, so both have to be known
+			Boolean left = parseCondition(tokens.before(operator));
+			Boolean right = parseCondition(tokens.after(operator));
+			if (left == null || right == null) {
+				return null;
+			}
+			return kind == Lexer.LOGICAL_AND ? left && right : left || right;
+		}
+
+		// the compiler compares every numeric type as ints
+		Expression.Constant left = parseConstant(tokens.before(operator));
+		Expression.Constant right = parseConstant(tokens.after(operator));
+		if (left == null || right == null || !(left.getValue() instanceof Integer)
+				|| !(right.getValue() instanceof Integer)) {
+			return null;
+		}
+
+		int a = (Integer) left.getValue();
+		int b = (Integer) right.getValue();
+		switch (kind) {
+			case Lexer.EQUAL:
+				return a == b;
+			case Lexer.NOT_EQUAL:
+				return a != b;
+			case Lexer.GREATER_THAN:
+				return a > b;
+			case Lexer.LESS_THAN:
+				return a < b;
+			case Lexer.GREATER_THAN_OR_EQUAL:
+				return a >= b;
+			case Lexer.LESS_THAN_OR_EQUAL:
+				return a <= b;
+			default:
+				return null;
+		}
+	}
+
+	private Expression parse(TokenStream tokens, boolean constant) {
+		int operator = MathExpressionCompiler.indexOfOperator(tokens);
+		if (operator == -1) {
+			return getOperand(tokens, constant);
+		}
+
+		Expression left = parse(Lexer.tokenize(tokens.before(operator)), constant);
+		if (left == null) {
+			return null;
+		}
+		Expression right = parse(Lexer.tokenize(tokens.after(operator)), constant);
+		if (right == null) {
+			return null;
+		}
+
+		return new Expression.Operator(tokens.kind(operator), left, right);
+	}
+
+	/**
+	 * @return a concatenation of the operands of a chain of '+' with a string
+	 *         operand, or the expression as it is
+	 */
+	private static Expression toConcat(Expression expression) {
+		if (!isAdd(expression)) {
+			return expression;
+		}
+
+		List<Expression> parts = new ArrayList<>();
+		addParts(expression, parts);
+		for (Expression part : parts) {
+			if (part.getType() != null && Types.padSignature(part.getType()).equals("Ljava/lang/String;")) {
+				return new Expression.Concat(parts);
+			}
+		}
+		return expression;
+	}
+
+	private static void addParts(Expression expression, List<Expression> parts) {
+		if (isAdd(expression)) {
+			addParts(((Expression.Operator) expression).getLeft(), parts);
+			addParts(((Expression.Operator) expression).getRight(), parts);
+		} else {
+			parts.add(expression);
+		}
+	}
+
+	private static boolean isAdd(Expression expression) {
+		return expression instanceof Expression.Operator
+				&& ((Expression.Operator) expression).getOperator() == Lexer.ADD;
+	}
+
+	private Expression getOperand(TokenStream tokens, boolean constant) {
+		Object value = getConstant(tokens);
+		if (value != null) {
+			return new Expression.Constant(value);
+		}
+		if (constant) {
+			return null;
+		}
+
+		String term = tokens.getSource().trim();
+		String type = Types.getType(term, "");
+		if (type != null) {
+			return new Expression.Constant(Types.parseLiteral(type, term));
+		}
+
+		// string constant fields are joined into a concatenation like literals
+		FieldData field = getConstantField(tokens);
+		if (field != null && field.getConstantValue() instanceof String) {
+			return new Expression.Constant(field.getConstantValue());
+		}
+
+		return getTerm(term);
+	}
+
+	/**
+	 * Compiles a term ahead of the place it is written to, so its stack is
+	 * counted once it is written.
+	 */
+	private Expression getTerm(String term) {
+		MethodNode code = new MethodNode();
+		int currentStack = method.getCurrentStack();
+		int stackSize = method.getStackSize();
+		method.resetStack(0, 0);
+
+		ExpressionCompiler ref = new ExpressionCompiler(true, method);
+		ref.setAllowMath(false);
+		ref.setAllowBoolean(allowBoolean);
+		int needed;
+		try {
+			ref.compile(data, code, block, term, new String[] { term });
+		} finally {
+			needed = method.getStackSize();
+			method.resetStack(currentStack, stackSize);
+		}
+
+		return new Expression.Term(term, ref.getReferenceSignature(), code.instructions, needed);
+	}
+
+	/**
+	 * @return the value of a numeric literal or of a numeric constant field,
+	 *         or null
+	 */
+	private Object getConstant(TokenStream tokens) {
+		if (tokens.size() == 1 && tokens.kind(0) == Lexer.NUMBER) {
+			String literal = tokens.text(0);
+			try {
+				return Types.parseLiteral(Types.getType(literal, ""), literal);
+			} catch (NumberFormatException e) {
+				// reported once the literal is compiled
+				return null;
+			}
+		}
+
+		FieldData field = getConstantField(tokens);
+		if (field == null) {
+			return null;
+		}
+
+		Object value = field.getConstantValue();
+		if (value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double) {
+			return value;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the field named by a term such as 'NAME', 'Class.NAME' or
+	 *         'this.NAME', if it is not shadowed by a local, or null
+	 */
+	private FieldData getConstantField(TokenStream tokens) {
+		FieldData field = null;
+		if (tokens.size() == 1 && tokens.kind(0) == Lexer.IDENTIFIER) {
+			String name = tokens.text(0);
+			if (isLocal(name)) {
+				return null;
+			}
+			field = data.getField(name);
+		} else if (tokens.size() == 3 && tokens.kind(0) == Lexer.IDENTIFIER && tokens.kind(1) == Lexer.DOT
+				&& tokens.kind(2) == Lexer.IDENTIFIER) {
+			String name = tokens.text(0);
+			ClassData owner = data;
+			if (!name.equals("this")) {
+				if (isLocal(name) || data.hasField(name)) {
+					return null;
+				}
+
+				try {
+					owner = ClassData.forName(data.resolveClass(name, false));
+				} catch (CompileError | ClassNotFoundException e) {
+					return null;
+				}
+			}
+			field = owner.getField(tokens.text(2));
+		}
+
+		return field;
+	}
+
+	private boolean isLocal(String name) {
+		return method != null && block != null && method.hasLocal(name, block);
+	}
+}
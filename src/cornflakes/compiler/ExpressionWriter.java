@@ -0,0 +1,264 @@
+package cornflakes.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+
+/**
+ * Lowers an {@link Expression} tree to instructions, leaving its value on the
+ * stack.
+ */
+public class ExpressionWriter implements Opcodes {
+	private static final Handle CONCAT = new Handle(H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory",
+			"makeConcatWithConstants",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+			false);
+
+	// the most argument slots of a concatenation call site
+	private static final int MAX_CONCAT_SLOTS = 200;
+
+	// the space reserved for every part whose length is not known
+	private static final int PART_CAPACITY = 16;
+
+	private MethodData method;
+	private MethodVisitor m;
+
+	public ExpressionWriter(MethodData method, MethodVisitor m) {
+		this.method = method;
+		this.m = m;
+	}
+
+	public void write(Expression expression) {
+		if (expression instanceof Expression.Constant) {
+			Types.pushConstant(m, ((Expression.Constant) expression).getValue());
+			method.ics();
+		} else if (expression instanceof Expression.Term) {
+			writeTerm((Expression.Term) expression);
+		} else if (expression instanceof Expression.Concat) {
+			Expression.Concat concat = (Expression.Concat) expression;
+			if (Compiler.getTarget() >= 9 && getSlots(concat) <= MAX_CONCAT_SLOTS) {
+				writeIndy(concat);
+			} else {
+				writeBuilder(concat);
+			}
+		} else {
+			Expression.Operator operator = (Expression.Operator) expression;
+			String type = operator.getType();
+			if (type == null) {
+				throw new CompileError("Cannot apply the operator to " + operator.getLeft().getType() + " and "
+						+ operator.getRight().getType());
+			}
+
+			write(operator.getLeft());
+			widen(operator.getLeft().getType(), type);
+			write(operator.getRight());
+			// the distance of a shift is an int whatever the type of the value
+			widen(operator.getRight().getType(),
+					operator.getOperator() == Expression.Operator.SHIFT_LEFT ? "I" : type);
+
+			m.visitInsn(getOpcode(operator.getOperator(), type));
+			if (operator.getOperator() != Lexer.AND && operator.getOperator() != Lexer.OR
+					&& operator.getOperator() != Lexer.XOR) {
+				method.dcs();
+			}
+		}
+	}
+
+	/**
+	 * Writes a copy of the code of a term with labels of its own, as the same
+	 * tree may be written more than once.
+	 */
+	private void writeTerm(Expression.Term term) {
+		Map<LabelNode, LabelNode> labels = new HashMap<>();
+		for (AbstractInsnNode insn = term.getCode().getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn instanceof LabelNode) {
+				labels.put((LabelNode) insn, new LabelNode());
+			}
+		}
+
+		for (AbstractInsnNode insn = term.getCode().getFirst(); insn != null; insn = insn.getNext()) {
+			insn.clone(labels).accept(m);
+		}
+		method.ics(term.getStack());
+	}
+
+	/**
+	 * Concatenates with a single call site of the StringConcatFactory; the
+	 * constant parts are part of its recipe.
+	 */
+	private void writeIndy(Expression.Concat concat) {
+		StringBuilder recipe = new StringBuilder();
+		StringBuilder descriptor = new StringBuilder("(");
+		List<Object> constants = new ArrayList<>();
+		for (Expression part : concat.getParts()) {
+			if (part instanceof Expression.Constant) {
+				String value = String.valueOf(((Expression.Constant) part).getValue());
+
+				// the tags of the recipe can only be passed as constants
+				if (value.indexOf('\u0001') != -1 || value.indexOf('\u0002') != -1) {
+					recipe.append('\u0002');
+					constants.add(value);
+				} else {
+					recipe.append(value);
+				}
+			} else {
+				write(part);
+				recipe.append('\u0001');
+				descriptor.append(Types.padSignature(part.getType()));
+				method.dcs();
+			}
+		}
+		descriptor.append(")Ljava/lang/String;");
+
+		constants.add(0, recipe.toString());
+		m.visitInvokeDynamicInsn("makeConcatWithConstants", descriptor.toString(), CONCAT, constants.toArray());
+		method.ics();
+	}
+
+	/**
+	 * Concatenates with a StringBuilder, which is sized for the constant parts
+	 * and a few characters for every other one.
+	 */
+	private void writeBuilder(Expression.Concat concat) {
+		int capacity = 0;
+		for (Expression part : concat.getParts()) {
+			if (part instanceof Expression.Constant) {
+				capacity += String.valueOf(((Expression.Constant) part).getValue()).length();
+			} else {
+				capacity += PART_CAPACITY;
+			}
+		}
+
+		m.visitTypeInsn(NEW, "java/lang/StringBuilder");
+		m.visitInsn(DUP);
+		Types.pushConstant(m, capacity);
+		m.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(I)V", false);
+		method.ics();
+		method.ics();
+		method.ics();
+		method.dcs();
+		method.dcs();
+
+		for (Expression part : concat.getParts()) {
+			String type;
+			if (part instanceof Expression.Constant) {
+				Types.pushConstant(m, String.valueOf(((Expression.Constant) part).getValue()));
+				method.ics();
+				type = "Ljava/lang/String;";
+			} else {
+				write(part);
+				type = getAppendType(Types.padSignature(part.getType()));
+			}
+
+			m.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
+					"(" + type + ")Ljava/lang/StringBuilder;", false);
+			method.dcs();
+		}
+
+		m.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+	}
+
+	static String getAppendType(String type) {
+		switch (type) {
+			case "B":
+			case "S":
+				return "I";
+			case "Z":
+			case "C":
+			case "I":
+			case "J":
+			case "F":
+			case "D":
+			case "Ljava/lang/String;":
+				return type;
+			default:
+				return "Ljava/lang/Object;";
+		}
+	}
+
+	private static int getSlots(Expression.Concat concat) {
+		int slots = 0;
+		for (Expression part : concat.getParts()) {
+			if (!(part instanceof Expression.Constant)) {
+				slots += part.getType().equals("J") || part.getType().equals("D") ? 2 : 1;
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Converts the value on top of the stack to the type an operator computes
+	 * in, see {@link Expression.Operator#getResultType(int, String, String)}.
+	 */
+	private void widen(String from, String to) {
+		from = Expression.Operator.promote(from);
+		if (from.equals(to) || from.equals("Z")) {
+			return;
+		}
+
+		switch (from + to) {
+			case "IJ":
+				m.visitInsn(I2L);
+				break;
+			case "IF":
+				m.visitInsn(I2F);
+				break;
+			case "ID":
+				m.visitInsn(I2D);
+				break;
+			case "JF":
+				m.visitInsn(L2F);
+				break;
+			case "JD":
+				m.visitInsn(L2D);
+				break;
+			case "FD":
+				m.visitInsn(F2D);
+				break;
+			case "JI":
+				// only the distance of a shift is narrowed
+				m.visitInsn(L2I);
+				break;
+			default:
+				throw new CompileError("Cannot convert " + from + " to " + to);
+		}
+	}
+
+	/**
+	 * @param type
+	 *            the type of the result, which both operands are widened to
+	 */
+	private static int getOpcode(int operator, String type) {
+		boolean isLong = type.equals("J");
+		boolean isFloat = type.equals("F");
+		boolean isDouble = type.equals("D");
+
+		switch (operator) {
+			case Expression.Operator.SHIFT_LEFT:
+				return isLong ? LSHL : ISHL;
+			case Lexer.ADD:
+				return isDouble ? DADD : isFloat ? FADD : isLong ? LADD : IADD;
+			case Lexer.SUBTRACT:
+				return isDouble ? DSUB : isFloat ? FSUB : isLong ? LSUB : ISUB;
+			case Lexer.MULTIPLY:
+				return isDouble ? DMUL : isFloat ? FMUL : isLong ? LMUL : IMUL;
+			case Lexer.DIVIDE:
+				return isDouble ? DDIV : isFloat ? FDIV : isLong ? LDIV : IDIV;
+			case Lexer.AND:
+				return isLong ? LAND : IAND;
+			case Lexer.OR:
+				return isLong ? LOR : IOR;
+			case Lexer.XOR:
+				return isLong ? LXOR : IXOR;
+			default:
+				throw new CompileError("Unknown operator: " + operator);
+		}
+	}
+}
@@ -8,6 +8,7 @@ public class FieldData {
 	private String name;
 	private String type;
 	private Object proposedData;
+	private Object constantValue;
 	private boolean isGeneric;
 	private int modifiers;
 
@@ -53,6 +54,18 @@ public class FieldData {
 		this.proposedData = proposedData;
 	}
 
+	/**
+	 * @return the literal value of a static constant, which can be used in
+	 *         place of reading the field, or null
+	 */
+	public Object getConstantValue() {
+		return constantValue;
+	}
+
+	public void setConstantValue(Object constantValue) {
+		this.constantValue = constantValue;
+	}
+
 	@Override
 	public String toString() {
 		return name + ": " + type;
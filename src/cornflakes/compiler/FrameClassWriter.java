@@ -0,0 +1,41 @@
+package cornflakes.compiler;
+
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A class writer which computes the stack map frames and the maximum stack
+ * and locals of every method itself. The frames are merged through the
+ * {@link ClassData} of the types instead of loading them, so classes which
+ * are still being compiled can be used.
+ */
+public class FrameClassWriter extends ClassWriter {
+	public FrameClassWriter() {
+		super(COMPUTE_FRAMES);
+	}
+
+	@Override
+	protected String getCommonSuperClass(String type1, String type2) {
+		try {
+			ClassData first = ClassData.forName(type1);
+			ClassData second = ClassData.forName(type2);
+
+			if (first.isAssignableFrom(second)) {
+				return type1;
+			}
+			if (second.isAssignableFrom(first)) {
+				return type2;
+			}
+			if (first.isInterface() || second.isInterface()) {
+				return "java/lang/Object";
+			}
+
+			do {
+				first = first.getParentClass();
+			} while (first != null && !first.isAssignableFrom(second));
+
+			return first == null ? "java/lang/Object" : first.getClassName();
+		} catch (ClassNotFoundException e) {
+			throw new CompileError(e);
+		}
+	}
+}
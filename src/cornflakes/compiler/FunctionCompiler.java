@@ -238,8 +238,7 @@ public class FunctionCompiler extends Compiler implements PostCompiler {
 
 			HashMap<String, Integer> paramMap = new HashMap<>();
 			for (Entry<String, String> par : methodData.getParameters().entrySet()) {
-				paramMap.put(par.getKey(), this.methodData.getLocalVariables());
-				this.methodData.addLocalVariable();
+				paramMap.put(par.getKey(), this.methodData.allocateLocal(par.getValue()));
 			}
 
 			String[] inner = Strings.before(Strings.after(lines, 1), 1);
@@ -249,7 +248,7 @@ public class FunctionCompiler extends Compiler implements PostCompiler {
 			GenericBodyCompiler gbc = new GenericBodyCompiler(methodData);
 			gbc.compile(data, m, block, innerBody, inner2);
 
-			if (!gbc.returns()) {
+			if (gbc.completes()) {
 				if (!block.doesThrow()) {
 					if (methodData.getReturnTypeSignature().equals("V")) {
 						m.visitInsn(RETURN);
@@ -267,13 +266,17 @@ public class FunctionCompiler extends Compiler implements PostCompiler {
 				m.visitLocalVariable(par.getKey(), par.getValue(), null, start, post, paramMap.get(par.getKey()));
 			}
 
-			m.visitMaxs(this.methodData.getStackSize(), this.methodData.getLocalVariables());
+			m.visitMaxs(this.methodData.getStackSize(), this.methodData.getMaxLocals());
 			m.visitEnd();
 		}
 	}
 
 	public void write() {
 		write = true;
+
+		CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.BODIES, data.getClassName(),
+				methodData.toString());
 		compile(data, cw, body, lines);
+		timer.stop();
 	}
 }
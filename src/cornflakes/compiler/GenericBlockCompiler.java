@@ -7,14 +7,26 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 public class GenericBlockCompiler implements GenericCompiler {
+	private static final int ITERATOR = 0;
+	private static final int ARRAY = 1;
+	private static final int LIST = 2;
+
 	private MethodData data;
 	private List<String[]> lines = new ArrayList<>();
+	private boolean completes = true;
 
 	public GenericBlockCompiler(MethodData data, List<String[]> lines) {
 		this.data = data;
 		this.lines = lines;
 	}
 
+	/**
+	 * Conditions with a constant value are not written: branches which are
+	 * never taken are compiled without writing any code, and a loop whose
+	 * condition is always true jumps back unconditionally. A loop body which
+	 * never completes is not followed by its increment, nor by a jump back
+	 * that only its end could reach.
+	 */
 	@Override
 	public void compile(ClassData data, MethodVisitor m, Block block, String rawbody, String[] rawlines) {
 		Label start = new Label();
@@ -34,10 +46,14 @@ public class GenericBlockCompiler implements GenericCompiler {
 			String newBlock = Strings.accumulate(newLines).trim();
 
 			thisBlock.setEndLabel(block.getEndLabel());
-			new GenericBodyCompiler(this.data).compile(data, m, thisBlock, newBlock, Strings.accumulate(newBlock));
+			GenericBodyCompiler body = new GenericBodyCompiler(this.data);
+			body.compile(data, m, thisBlock, newBlock, Strings.accumulate(newBlock));
+			completes = body.completes();
 		} else {
 			if (condition.startsWith("if ")) {
 				boolean hasElse = false;
+				boolean taken = false;
+				boolean branchCompletes = false;
 				Label finalEnd = new Label();
 
 				int last = block.getStart() + 1;
@@ -57,26 +73,51 @@ public class GenericBlockCompiler implements GenericCompiler {
 						val = 4;
 					}
 					String parse = condition.substring(val).trim();
+					Boolean value = Boolean.TRUE;
 					if (!parse.isEmpty()) {
 						if (parse.startsWith("if ")) {
 							parse = parse.substring(2).trim();
 						}
-						new BooleanExpressionCompiler(this.data, theEnd, true).compile(data, m, currentBlock, parse,
-								new String[] { parse });
+						value = new ExpressionParser(data, this.data, currentBlock, true).parseCondition(parse);
 					} else {
 						if (hasElse) {
 							throw new CompileError("Cannot have multiple else blocks attached to one if chain");
 						}
 						hasElse = true;
 					}
-					new GenericBodyCompiler(this.data).compile(data, m, block, newBlock, Strings.accumulate(newBlock));
-					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-					m.visitJumpInsn(GOTO, finalEnd);
 
-					m.visitLabel(theEnd);
+					// branches after one that is always taken are never reached
+					MethodVisitor branch = taken || Boolean.FALSE.equals(value) ? CompileUtils.DISCARD : m;
+					if (!parse.isEmpty()) {
+						new BooleanExpressionCompiler(this.data, theEnd, true).compile(data,
+								value == null ? branch : CompileUtils.DISCARD, currentBlock, parse,
+								new String[] { parse });
+					}
+
+					GenericBodyCompiler body = new GenericBodyCompiler(this.data);
+					body.compile(data, branch, block, newBlock, Strings.accumulate(newBlock));
+					if (branch == m) {
+						if (body.completes()) {
+							branchCompletes = true;
+
+							// the last branch and one that is always taken fall
+							// through to the end
+							if (value == null && i < lines.size() - 1) {
+								m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(),
+										null);
+								m.visitJumpInsn(GOTO, finalEnd);
+							}
+						}
+						if (value != null) {
+							taken = true;
+						}
+
+						m.visitLabel(theEnd);
+					}
 				}
 
 				m.visitLabel(finalEnd);
+				completes = !taken || branchCompletes;
 			} else if (condition.startsWith("while ")) {
 				Block currentBlock = new Block(block.getStart() + 1, start, null);
 				block.addBlock(currentBlock);
@@ -91,19 +132,26 @@ public class GenericBlockCompiler implements GenericCompiler {
 				Label afterGoto = new Label();
 				Label after = new Label();
 
-				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-				m.visitJumpInsn(GOTO, after);
+				Boolean value = new ExpressionParser(data, this.data, currentBlock, true).parseCondition(parse);
+				if (value == null) {
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(GOTO, after);
+				}
 
 				m.visitLabel(afterGoto);
-				new GenericBodyCompiler(this.data).compile(data, m, currentBlock, newBlock,
+				GenericBodyCompiler body = new GenericBodyCompiler(this.data);
+				body.compile(data, Boolean.FALSE.equals(value) ? CompileUtils.DISCARD : m, currentBlock, newBlock,
 						Strings.accumulate(newBlock));
 				m.visitLabel(after);
-				new BooleanExpressionCompiler(this.data, outOfLoop, true).compile(data, m, currentBlock, parse,
-						new String[] { parse });
+				new BooleanExpressionCompiler(this.data, outOfLoop, true).compile(data,
+						value == null ? m : CompileUtils.DISCARD, currentBlock, parse, new String[] { parse });
 
-				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-				m.visitJumpInsn(GOTO, afterGoto);
+				if (value == null || value && body.completes()) {
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(GOTO, afterGoto);
+				}
 				m.visitLabel(outOfLoop);
+				completes = !Boolean.TRUE.equals(value);
 			} else if (condition.startsWith("for ")) {
 				Block currentBlock = new Block(block.getStart() + 1, start, null);
 				block.addBlock(currentBlock);
@@ -126,26 +174,38 @@ public class GenericBlockCompiler implements GenericCompiler {
 				String conditionBool = spl[1].trim();
 				String increment = spl[2].trim();
 
+				int scope = this.data.getLocalVariables();
 				new GenericStatementCompiler(this.data).compile(data, m, currentBlock, declaration,
 						new String[] { declaration });
 
-				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-				m.visitJumpInsn(GOTO, after);
+				Boolean value = new ExpressionParser(data, this.data, currentBlock, true)
+						.parseCondition(conditionBool);
+				MethodVisitor loop = Boolean.FALSE.equals(value) ? CompileUtils.DISCARD : m;
+				if (value == null) {
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(GOTO, after);
+				}
 
 				m.visitLabel(afterGoto);
 
-				new GenericBodyCompiler(this.data).compile(data, m, currentBlock, newBlock,
-						Strings.accumulate(newBlock));
-				new MathExpressionCompiler(this.data, false, true).compile(data, m, currentBlock, increment,
+				GenericBodyCompiler body = new GenericBodyCompiler(this.data);
+				body.compile(data, loop, currentBlock, newBlock, Strings.accumulate(newBlock));
+				new MathExpressionCompiler(this.data, false, true).compile(data,
+						body.completes() ? loop : CompileUtils.DISCARD, currentBlock, increment,
 						new String[] { increment });
 
 				m.visitLabel(after);
-				new BooleanExpressionCompiler(this.data, outOfLoop, true).compile(data, m, currentBlock, conditionBool,
+				new BooleanExpressionCompiler(this.data, outOfLoop, true).compile(data,
+						value == null ? m : CompileUtils.DISCARD, currentBlock, conditionBool,
 						new String[] { conditionBool });
 
-				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-				m.visitJumpInsn(GOTO, afterGoto);
+				if (value == null || value && body.completes()) {
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(GOTO, afterGoto);
+				}
 				m.visitLabel(outOfLoop);
+				this.data.endScope(m, outOfLoop, scope);
+				completes = !Boolean.TRUE.equals(value);
 			} else if (condition.startsWith("foreach ")) {
 				Block currentBlock = new Block(block.getStart() + 1, start, null);
 				block.addBlock(currentBlock);
@@ -167,33 +227,61 @@ public class GenericBlockCompiler implements GenericCompiler {
 
 				ExpressionCompiler exp = new ExpressionCompiler(false, this.data);
 				exp.compile(data, m, currentBlock, itr, new String[] { itr });
+				String signature = exp.getReferenceSignature();
 
-				int idx = this.data.getLocalVariables();
-				this.data.addLocal(new LocalData(var, "Ljava/lang/Object;", currentBlock, idx, 0));
-				this.data.addLocalVariable();
-
-				int itrIdx = this.data.getLocalVariables();
-				this.data.addLocal(new LocalData("temp_itr", "Ljava/lang/Iterator;", currentBlock, itrIdx, ACC_FINAL));
-				this.data.addLocalVariable();
-
+				// arrays and random access lists are walked by index, with the
+				// element typed by the array or the generic type
+				String element = "Ljava/lang/Object;";
+				int loop = ITERATOR;
 				try {
-					if (exp.getReferenceSignature().equals("Ljava/util/Iterator;")) {
-						exp.setWrite(true);
-						exp.compile(data, m, currentBlock, itr, new String[] { itr });
-					} else if (ClassData.forName(exp.getReferenceSignature()).isSubclassOf("java.lang.Iterable")) {
-						exp.setWrite(true);
-						exp.compile(data, m, currentBlock, itr, new String[] { itr });
-
-						m.visitMethodInsn(INVOKEINTERFACE, "java/lang/Iterable", "iterator", "()Ljava/util/Iterator;", true);
+					if (signature.startsWith("[")) {
+						element = signature.substring(1);
+						loop = ARRAY;
 					} else {
-						throw new CompileError(
-								"Cannot for-each over the given object; should be an instance of java.util.Iterator or java.util.Iterable");
+						if (exp.getGenericTypes() != null && exp.getGenericTypes().size() == 1) {
+							element = Types.padSignature(exp.getGenericTypes().get(0).getType());
+						}
+
+						ClassData type = ClassData.forName(signature);
+						if (type.isSubclassOf("java.util.List") && type.isSubclassOf("java.util.RandomAccess")) {
+							loop = LIST;
+						} else if (!signature.equals("Ljava/util/Iterator;")
+								&& !type.isSubclassOf("java.lang.Iterable")) {
+							throw new CompileError(
+									"Cannot for-each over the given object; should be an array or an instance of java.util.Iterator or java.util.Iterable");
+						}
 					}
 				} catch (ClassNotFoundException e) {
 					throw new CompileError(e);
 				}
+
+				int scope = this.data.getLocalVariables();
+				int idx = this.data.allocateLocal(element);
+				this.data.addLocal(new LocalData(var, element, currentBlock, idx, 0));
+
+				int itrIdx = this.data.allocateLocal(loop == ITERATOR ? "Ljava/util/Iterator;" : signature);
+				this.data.addLocal(new LocalData("temp_itr", loop == ITERATOR ? "Ljava/util/Iterator;" : signature,
+						currentBlock, itrIdx, ACC_FINAL));
+
+				int indexIdx = -1;
+				if (loop != ITERATOR) {
+					indexIdx = this.data.allocateLocal("I");
+					this.data.addLocal(new LocalData("temp_index", "I", currentBlock, indexIdx, 0));
+				}
+
+				exp.setWrite(true);
+				exp.compile(data, m, currentBlock, itr, new String[] { itr });
+				if (loop == ITERATOR && !signature.equals("Ljava/util/Iterator;")) {
+					m.visitMethodInsn(INVOKEINTERFACE, "java/lang/Iterable", "iterator", "()Ljava/util/Iterator;", true);
+				}
 				m.visitVarInsn(ASTORE, itrIdx);
 
+				if (loop != ITERATOR) {
+					m.visitInsn(ICONST_0);
+					this.data.ics();
+					m.visitVarInsn(ISTORE, indexIdx);
+				}
+
 				Label afterGoto = new Label();
 				Label after = new Label();
 
@@ -202,26 +290,64 @@ public class GenericBlockCompiler implements GenericCompiler {
 
 				m.visitLabel(afterGoto);
 				m.visitVarInsn(ALOAD, itrIdx);
-				m.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "next", "()Ljava/lang/Object;", true);
+				if (loop == ARRAY) {
+					m.visitVarInsn(ILOAD, indexIdx);
+					m.visitInsn(Types.getArrayOpcode(Types.LOAD, signature));
+				} else if (loop == LIST) {
+					m.visitVarInsn(ILOAD, indexIdx);
+					m.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "get", "(I)Ljava/lang/Object;", true);
+				} else {
+					m.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "next", "()Ljava/lang/Object;", true);
+				}
 				this.data.ics();
-				m.visitVarInsn(Types.getOpcode(Types.STORE, "Ljava/lang/Object;"), idx);
+				if (loop != ARRAY && !element.equals("Ljava/lang/Object;")) {
+					m.visitTypeInsn(CHECKCAST, Types.unpadSignature(element));
+				}
+				m.visitVarInsn(Types.getOpcode(Types.STORE, element), idx);
+
+				GenericBodyCompiler body = new GenericBodyCompiler(this.data);
+				body.compile(data, m, currentBlock, newBlock, Strings.accumulate(newBlock));
+				if (loop != ITERATOR && body.completes()) {
+					m.visitIincInsn(indexIdx, 1);
+				}
 
-				new GenericBodyCompiler(this.data).compile(data, m, currentBlock, newBlock,
-						Strings.accumulate(newBlock));
 				m.visitLabel(after);
-				m.visitVarInsn(ALOAD, itrIdx);
-				m.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z", true);
-				this.data.ics();
+				if (loop == ITERATOR) {
+					m.visitVarInsn(ALOAD, itrIdx);
+					m.visitMethodInsn(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z", true);
+					this.data.ics();
 
-				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
-				m.visitJumpInsn(IFEQ, outOfLoop);
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(IFEQ, outOfLoop);
+				} else {
+					m.visitVarInsn(ILOAD, indexIdx);
+					m.visitVarInsn(ALOAD, itrIdx);
+					if (loop == ARRAY) {
+						m.visitInsn(ARRAYLENGTH);
+					} else {
+						m.visitMethodInsn(INVOKEINTERFACE, "java/util/List", "size", "()I", true);
+					}
+					this.data.ics();
+					this.data.ics();
+
+					m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
+					m.visitJumpInsn(IF_ICMPGE, outOfLoop);
+				}
 
 				m.visitFrame(F_SAME, this.data.getLocalVariables(), null, this.data.getCurrentStack(), null);
 				m.visitJumpInsn(GOTO, afterGoto);
 				m.visitLabel(outOfLoop);
+				this.data.endScope(m, outOfLoop, scope);
 			} else {
 				throw new CompileError("Unresolved block condition: " + condition);
 			}
 		}
 	}
+
+	/**
+	 * @return whether the code after the block can be reached
+	 */
+	public boolean completes() {
+		return completes;
+	}
 }
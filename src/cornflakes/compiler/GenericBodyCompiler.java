@@ -3,18 +3,26 @@ package cornflakes.compiler;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 public class GenericBodyCompiler implements GenericCompiler {
 	private MethodData data;
 	private boolean returns;
+	private boolean completes = true;
 
 	public GenericBodyCompiler(MethodData data) {
 		this.data = data;
 	}
 
+	/**
+	 * Lines after a return, a throw or a block which never completes can not
+	 * be reached, they are compiled without writing any code. The body is the
+	 * scope of the locals declared in it.
+	 */
 	@Override
 	public void compile(ClassData data, MethodVisitor m, Block block, String body, String[] lines) {
+		int scope = this.data.getLocalVariables();
 		int cursor = 0;
 		while (cursor < body.length()) {
 			int idx = body.indexOf(System.lineSeparator(), cursor);
@@ -46,7 +54,11 @@ public class GenericBodyCompiler implements GenericCompiler {
 					next = body.substring(close);
 				}
 
-				new GenericBlockCompiler(this.data, list).compile(data, m, block, newBlock, blockLines);
+				GenericBlockCompiler gbc = new GenericBlockCompiler(this.data, list);
+				gbc.compile(data, completes ? m : CompileUtils.DISCARD, block, newBlock, blockLines);
+				if (!gbc.completes()) {
+					completes = false;
+				}
 
 				cursor = close;
 				while (cursor < body.length() && Character.isWhitespace(body.charAt(cursor))) {
@@ -54,11 +66,15 @@ public class GenericBodyCompiler implements GenericCompiler {
 				}
 			} else {
 				GenericStatementCompiler gsc = new GenericStatementCompiler(this.data);
-				gsc.compile(data, m, block, line, new String[] { line });
+				gsc.compile(data, completes ? m : CompileUtils.DISCARD, block, line, new String[] { line });
 
 				if (gsc.getType() == GenericStatementCompiler.RETURN) {
 					returns = true;
 				}
+				if (gsc.getType() == GenericStatementCompiler.RETURN
+						|| gsc.getType() == GenericStatementCompiler.THROW) {
+					completes = false;
+				}
 
 				cursor += line.length();
 				while (cursor < body.length() && Character.isWhitespace(body.charAt(cursor))) {
@@ -66,9 +82,20 @@ public class GenericBodyCompiler implements GenericCompiler {
 				}
 			}
 		}
+
+		Label end = new Label();
+		m.visitLabel(end);
+		this.data.endScope(m, end, scope);
 	}
 
 	public boolean returns() {
 		return returns;
 	}
+
+	/**
+	 * @return whether the end of the body can be reached
+	 */
+	public boolean completes() {
+		return completes;
+	}
 }
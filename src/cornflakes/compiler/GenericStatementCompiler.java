@@ -1,5 +1,9 @@
 package cornflakes.compiler;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 import cornflakes.compiler.CompileUtils.VariableDeclaration;
@@ -41,7 +45,7 @@ public class GenericStatementCompiler implements GenericCompiler {
 						}
 
 						Object val = Types.parseLiteral(type, par);
-						m.visitLdcInsn(val);
+						Types.pushConstant(m, val);
 						m.visitInsn(ARETURN);
 
 						this.data.ics();
@@ -53,18 +57,7 @@ public class GenericStatementCompiler implements GenericCompiler {
 						}
 
 						Object val = Types.parseLiteral(type, par);
-						int push = Types.getOpcode(Types.PUSH, type);
-						if (push == LDC) {
-							m.visitLdcInsn(val);
-						} else {
-							String toString = val.toString();
-
-							if (toString.equals("true") || toString.equals("false")) {
-								m.visitInsn(toString.equals("false") ? ICONST_0 : ICONST_1);
-							} else {
-								m.visitVarInsn(push, Integer.parseInt(val.toString()));
-							}
-						}
+						Types.pushConstant(m, val);
 						this.data.ics();
 
 						int op = Types.getOpcode(Types.RETURN, type);
@@ -74,9 +67,6 @@ public class GenericStatementCompiler implements GenericCompiler {
 					ExpressionCompiler compiler = new ExpressionCompiler(true, this.data);
 					compiler.compile(data, m, block, par, new String[] { par });
 
-					String ref = Types.getTypeFromSignature(Types.unpadSignature(compiler.getReferenceSignature()))
-							.getSimpleClassName();
-
 					if (!Types.isSuitable(this.data.getReturnTypeSignature(), compiler.getReferenceSignature())) {
 						throw new CompileError("A return value of type "
 								+ this.data.getReturnType().getSimpleClassName() + " is expected, but one of type "
@@ -84,7 +74,7 @@ public class GenericStatementCompiler implements GenericCompiler {
 								+ " was given");
 					}
 
-					int op = Types.getOpcode(Types.RETURN, ref);
+					int op = Types.getOpcode(Types.RETURN, compiler.getReferenceSignature());
 					m.visitInsn(op);
 				}
 			} else {
@@ -143,7 +133,7 @@ public class GenericStatementCompiler implements GenericCompiler {
 			String valueType = decl.getValueType();
 			String variableType = decl.getVariableType();
 
-			int idx = this.data.getLocalVariables();
+			int idx = this.data.allocateLocal(variableType);
 			String signature = Types.padSignature(variableType);
 			if (decl.isGenericTyped()) {
 				signature = signature.substring(0, signature.length() - 1);
@@ -153,45 +143,47 @@ public class GenericStatementCompiler implements GenericCompiler {
 				}
 				signature += ">;";
 			}
-			m.visitLocalVariable(variableName, variableType, signature, block.getStartLabel(), block.getEndLabel(),
-					idx);
 			if (value != null) {
-				int push = Types.getOpcode(Types.PUSH, valueType);
 				int store = Types.getOpcode(Types.STORE, variableType);
 
-				if (push == LDC) {
-					m.visitLdcInsn(value);
-					this.data.ics();
-				} else if (value != null) {
-					String toString = value.toString();
-					if (toString.equals("true") || toString.equals("false")) {
-						m.visitInsn(toString.equals("false") ? ICONST_0 : ICONST_1);
-					} else {
-						m.visitVarInsn(push, Integer.parseInt(toString));
-						this.data.ics();
-					}
-				}
+				Types.pushConstant(m, value);
+				this.data.ics();
 
 				m.visitVarInsn(store, idx);
 			} else {
 				m.visitVarInsn(Types.getOpcode(Types.STORE, valueType), idx);
 			}
 
+			// the debug entry is written once the scope of the local ends
+			Label start = new Label();
+			m.visitLabel(start);
+
 			LocalData local = new LocalData(variableName, variableType, block, idx,
 					body.startsWith("var") ? 0 : ACC_FINAL);
+			local.setStart(start);
+			local.setSignature(signature);
 			if (decl.isGenericTyped()) {
 				local.setGeneric(true);
 				local.setGenericTypes(decl.getGenericTypes());
 			}
 			this.data.addLocal(local);
-			this.data.addLocalVariable();
 		} else {
 			boolean ref = true;
 
-			if (body.contains("=")) {
-				String[] split = body.split("=", 2);
-				String name = split[0].trim();
-				String value = split[1].trim();
+			TokenStream tokens = Lexer.tokenize(body);
+			int assign = tokens.indexOf(Lexer.ASSIGN);
+			if (assign != -1) {
+				String name = tokens.before(assign);
+				String value = tokens.after(assign);
+
+				String target = name.trim();
+				int bracket = target.indexOf('[');
+				if (bracket > 0 && target.endsWith("]")
+						&& this.data.hasLocal(target.substring(0, bracket).trim(), block)) {
+					compileIndexStore(data, m, block, target.substring(0, bracket).trim(),
+							target.substring(bracket + 1, target.length() - 1).trim(), value);
+					return;
+				}
 
 				ExpressionCompiler compiler = new ExpressionCompiler(true, this.data);
 				compiler.setLoadVariableReference(false);
@@ -211,14 +203,7 @@ public class GenericStatementCompiler implements GenericCompiler {
 
 						Object obj = Types.parseLiteral(valueType, value);
 
-						int push = Types.getOpcode(Types.PUSH, valueType);
-
-						if (push == LDC) {
-							m.visitLdcInsn(obj);
-						} else {
-							m.visitVarInsn(push, Integer.parseInt(obj.toString()));
-						}
-
+						Types.pushConstant(m, obj);
 						this.data.ics();
 
 						if (field instanceof LocalData) {
@@ -256,6 +241,75 @@ public class GenericStatementCompiler implements GenericCompiler {
 		}
 	}
 
+	/**
+	 * Stores a value at an index of a local array, or of a local whose class
+	 * has an indexer method which takes the index and the value.
+	 */
+	private void compileIndexStore(ClassData data, MethodVisitor m, Block block, String variable, String index,
+			String value) {
+		LocalData local = this.data.getLocal(variable, block);
+		String type = local.getType();
+
+		String owner = null;
+		MethodData indexer = null;
+		String indexType = "I";
+		String element;
+		if (type.startsWith("[")) {
+			element = type.substring(1);
+		} else {
+			try {
+				ClassData cls = ClassData.forName(type);
+				owner = cls.getClassName();
+				indexer = cls.isIndexedClass() ? ExpressionCompiler.getIndexer(cls, 2) : null;
+				if (cls.isIndexedClass() && indexer == null) {
+					throw new CompileError(owner + " has no indexer with 2 parameters to assign an element");
+				}
+			} catch (ClassNotFoundException e) {
+				throw new CompileError(e);
+			}
+			if (indexer == null) {
+				throw new CompileError("Cannot assign to an index of " + variable);
+			}
+
+			List<String> parameters = new ArrayList<>(indexer.getParameters().values());
+			indexType = parameters.get(0);
+			element = parameters.get(1);
+		}
+
+		m.visitVarInsn(Types.getOpcode(Types.LOAD, type), local.getIndex());
+		this.data.ics();
+		new ExpressionCompiler(true, this.data).compileIndex(data, m, block, index, indexType);
+
+		String valueType = Types.getType(value, element);
+		if (valueType != null) {
+			if (!Types.isSuitable(element, Types.getTypeSignature(valueType))) {
+				throw new CompileError(valueType + " is not assignable to " + element);
+			}
+
+			Types.pushConstant(m, Types.parseLiteral(valueType, value));
+			this.data.ics();
+		} else {
+			ExpressionCompiler compiler = new ExpressionCompiler(true, this.data);
+			compiler.compile(data, m, block, value, new String[] { value });
+
+			if (!Types.isSuitable(element, compiler.getReferenceSignature())) {
+				throw new CompileError(compiler.getReferenceSignature() + " is not assignable to " + element);
+			}
+		}
+
+		if (indexer == null) {
+			m.visitInsn(Types.getArrayOpcode(Types.STORE, type));
+		} else {
+			m.visitMethodInsn(INVOKEVIRTUAL, owner, "_index_", indexer.getSignature(), false);
+			if (!indexer.getReturnTypeSignature().equals("V")) {
+				m.visitInsn(indexer.getReturnTypeSignature().matches("[JD]") ? POP2 : POP);
+			}
+		}
+		this.data.dcs();
+		this.data.dcs();
+		this.data.dcs();
+	}
+
 	public int getType() {
 		return type;
 	}
@@ -147,7 +147,7 @@ public class HeadCompiler extends Compiler implements PostCompiler {
 		Compiler.register(cw, data);
 		ClassData.registerCornflakesClass(data);
 
-		cw.visit(V1_8, accessor, className, null, parent, intArr.length == 0 ? null : intArr);
+		cw.visit(Compiler.getTarget() >= 9 ? V9 : V1_8, accessor, className, null, parent, intArr.length == 0 ? null : intArr);
 		cw.visitSource(data.getSourceName(), null);
 
 		after = Strings.after(lines, index);
@@ -0,0 +1,139 @@
+package cornflakes.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Only compiles the source files that changed since the last build, plus the
+ * files depending on a class whose exported surface changed. Every other
+ * class is restored from the {@link SignatureCache} so the compiled files can
+ * still resolve it.
+ */
+public class IncrementalCompiler {
+	private PhaseScheduler scheduler;
+	private Path cachePath;
+	private Path outputDirectory;
+
+	public IncrementalCompiler(PhaseScheduler scheduler, Path cachePath, Path outputDirectory) {
+		this.scheduler = scheduler;
+		this.cachePath = cachePath;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * @return the classes that were compiled; classes restored from the cache
+	 *         are not included
+	 */
+	public List<ClassData> compile(List<File> files) throws IOException {
+		SignatureCache cache = SignatureCache.load(cachePath);
+
+		List<byte[]> hashes = scheduler.map(files, (file) -> SignatureCache.hash(Files.readAllBytes(file.toPath())));
+		Map<String, byte[]> sourceHashes = new HashMap<>();
+		Set<String> dirty = new LinkedHashSet<>();
+		Set<String> changed = new HashSet<>();
+
+		for (int i = 0; i < files.size(); i++) {
+			String name = files.get(i).getName();
+			SignatureCache.Entry entry = cache.get(name);
+			sourceHashes.put(name, hashes.get(i));
+
+			if (entry == null || !Arrays.equals(entry.getSourceHash(), hashes.get(i))
+					|| !Files.exists(outputDirectory.resolve(entry.getClassName() + ".class"))) {
+				dirty.add(name);
+			}
+		}
+
+		for (SignatureCache.Entry entry : cache.getEntries()) {
+			if (!sourceHashes.containsKey(entry.getSourceName())) {
+				cache.remove(entry.getSourceName());
+				changed.add(entry.getClassName());
+			}
+		}
+
+		while (true) {
+			dirty.addAll(dependents(cache, changed, dirty));
+
+			Compiler.reset();
+
+			List<ClassData> context = new ArrayList<>();
+			for (SignatureCache.Entry entry : cache.getEntries()) {
+				if (!dirty.contains(entry.getSourceName())) {
+					ClassData stub = ClassDataCodec.decode(entry.getSurface());
+					ClassData.registerCornflakesClass(stub);
+					context.add(stub);
+				}
+			}
+
+			List<File> sources = new ArrayList<>();
+			for (File file : files) {
+				if (dirty.contains(file.getName())) {
+					sources.add(file);
+				}
+			}
+
+			List<ClassData> compiled = MainCompiler.compile(scheduler, sources, context);
+			List<byte[]> surfaces = scheduler.map(compiled, ClassDataCodec::encode);
+
+			Set<String> newlyChanged = new HashSet<>();
+			for (int i = 0; i < compiled.size(); i++) {
+				ClassData data = compiled.get(i);
+				SignatureCache.Entry entry = cache.get(data.getSourceName());
+
+				if (entry == null || !Arrays.equals(entry.getSurface(), surfaces.get(i))) {
+					newlyChanged.add(data.getClassName());
+					if (entry != null) {
+						newlyChanged.add(entry.getClassName());
+					}
+				}
+			}
+
+			if (!dependents(cache, newlyChanged, dirty).isEmpty()) {
+				// a signature the clean files were compiled against changed, so
+				// start over with those files included
+				changed.addAll(newlyChanged);
+				continue;
+			}
+
+			for (int i = 0; i < compiled.size(); i++) {
+				ClassData data = compiled.get(i);
+				cache.put(new SignatureCache.Entry(data.getSourceName(), sourceHashes.get(data.getSourceName()),
+						data.getClassName(), surfaces.get(i), SignatureCache.dependenciesOf(data)));
+			}
+			cache.save(cachePath);
+
+			return compiled;
+		}
+	}
+
+	private static Set<String> dependents(SignatureCache cache, Set<String> classes, Set<String> dirty) {
+		Set<String> dependents = new LinkedHashSet<>();
+		if (classes.isEmpty()) {
+			return dependents;
+		}
+
+		for (SignatureCache.Entry entry : cache.getEntries()) {
+			if (dirty.contains(entry.getSourceName())) {
+				continue;
+			}
+
+			for (String dep : entry.getDependencies()) {
+				if (classes.contains(dep)) {
+					dependents.add(entry.getSourceName());
+					break;
+				}
+			}
+		}
+
+		return dependents;
+	}
+}
@@ -0,0 +1,48 @@
+package cornflakes.compiler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes all classes into a single jar through one buffered file channel.
+ */
+public class JarClassOutput implements ClassOutput {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private JarOutputStream out;
+
+	public JarClassOutput(Path path) throws IOException {
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.out = new JarOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE),
+				manifest);
+	}
+
+	@Override
+	public synchronized void write(String className, byte[] bytes) throws IOException {
+		out.putNextEntry(new ZipEntry(className + ".class"));
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,99 @@
+package cornflakes.compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR events of {@link CompileMetrics}. Only loaded once the JFR API is
+ * known to be available, as older Java 8 runtimes do not have it.
+ */
+class JfrEvents {
+	@Name("cornflakes.CompilePhase")
+	@Label("Compile Phase")
+	@Description("A compilation phase, a class within a phase or a method body")
+	@Category("Cornflakes")
+	@StackTrace(false)
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Class")
+		String className;
+
+		@Label("Method")
+		String method;
+	}
+
+	@Name("cornflakes.ClassEmitted")
+	@Label("Class Emitted")
+	@Category("Cornflakes")
+	@StackTrace(false)
+	static class EmittedEvent extends Event {
+		@Label("Class")
+		String className;
+
+		@Label("Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("cornflakes.CompileSummary")
+	@Label("Compile Summary")
+	@Category("Cornflakes")
+	@StackTrace(false)
+	static class SummaryEvent extends Event {
+		@Label("Class Lookups")
+		long forNameCalls;
+
+		@Label("Cached Class Lookups")
+		long forNameHits;
+
+		@Label("String Scans")
+		long stringScans;
+
+		@Label("Lexer Runs")
+		long lexerRuns;
+	}
+
+	static Object begin(String phase, String method) {
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase;
+		event.method = method;
+		event.begin();
+		return event;
+	}
+
+	static void commit(Object event, String className) {
+		PhaseEvent phase = (PhaseEvent) event;
+		phase.end();
+		if (phase.shouldCommit()) {
+			phase.className = className;
+			phase.commit();
+		}
+	}
+
+	static void emitted(String className, int bytes) {
+		EmittedEvent event = new EmittedEvent();
+		if (event.isEnabled()) {
+			event.className = className;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	static void summary(long forNameCalls, long forNameHits, long stringScans, long lexerRuns) {
+		SummaryEvent event = new SummaryEvent();
+		if (event.isEnabled()) {
+			event.forNameCalls = forNameCalls;
+			event.forNameHits = forNameHits;
+			event.stringScans = stringScans;
+			event.lexerRuns = lexerRuns;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package cornflakes.compiler;
+
+public class Lexer {
+	public static final int IDENTIFIER = 0;
+	public static final int NUMBER = 1;
+	public static final int STRING = 2;
+	public static final int CHARACTER = 3;
+	public static final int DOT = 4;
+	public static final int COMMA = 5;
+	public static final int COLON = 6;
+	public static final int SEMICOLON = 7;
+	public static final int OPEN_PAREN = 8;
+	public static final int CLOSE_PAREN = 9;
+	public static final int OPEN_BRACKET = 10;
+	public static final int CLOSE_BRACKET = 11;
+	public static final int OPEN_BRACE = 12;
+	public static final int CLOSE_BRACE = 13;
+	public static final int EQUAL = 14;
+	public static final int NOT_EQUAL = 15;
+	public static final int GREATER_THAN = 16;
+	public static final int LESS_THAN = 17;
+	public static final int GREATER_THAN_OR_EQUAL = 18;
+	public static final int LESS_THAN_OR_EQUAL = 19;
+	public static final int ASSIGN = 20;
+	public static final int ADD = 21;
+	public static final int SUBTRACT = 22;
+	public static final int MULTIPLY = 23;
+	public static final int DIVIDE = 24;
+	public static final int REMAINDER = 25;
+	public static final int AND = 26;
+	public static final int OR = 27;
+	public static final int XOR = 28;
+	public static final int NOT = 29;
+	public static final int INCREMENT = 30;
+	public static final int DECREMENT = 31;
+	public static final int ARROW = 32;
+	public static final int QUESTION = 33;
+	public static final int IS = 34;
+	public static final int LOGICAL_AND = 35;
+	public static final int LOGICAL_OR = 36;
+	public static final int UNKNOWN = 37;
+
+	/**
+	 * Scans the given source exactly once and returns its tokens. String and
+	 * character literals are kept as single tokens, so operators inside of
+	 * quotes are never reported.
+	 */
+	public static TokenStream tokenize(String source) {
+		CompileMetrics.lexerRun();
+		TokenStream tokens = new TokenStream(source);
+		int len = source.length();
+		int depth = 0;
+		int i = 0;
+
+		while (i < len) {
+			char c = source.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+
+			int start = i;
+			int kind;
+
+			if (c == '/' && i + 1 < len && source.charAt(i + 1) == '/') {
+				while (i < len && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+					i++;
+				}
+				continue;
+			} else if (Character.isLetter(c) || c == '_' || c == '$') {
+				while (i < len && isIdentifierPart(source.charAt(i))) {
+					i++;
+				}
+
+				kind = IDENTIFIER;
+				if (i - start == 2) {
+					if (source.startsWith("is", start)) {
+						kind = IS;
+					} else if (source.startsWith("or", start)) {
+						kind = LOGICAL_OR;
+					}
+				} else if (i - start == 3 && source.startsWith("and", start)) {
+					kind = LOGICAL_AND;
+				}
+			} else if (c >= '0' && c <= '9') {
+				while (i < len && Character.isDigit(source.charAt(i))) {
+					i++;
+				}
+				if (i + 1 < len && source.charAt(i) == '.' && Character.isDigit(source.charAt(i + 1))) {
+					i++;
+					while (i < len && Character.isDigit(source.charAt(i))) {
+						i++;
+					}
+				}
+
+				kind = NUMBER;
+			} else if (c == '"' || c == '\'') {
+				i++;
+				while (i < len && source.charAt(i) != c) {
+					if (source.charAt(i) == '\\') {
+						i++;
+					}
+					i++;
+				}
+				i = Math.min(i + 1, len);
+
+				kind = c == '"' ? STRING : CHARACTER;
+			} else {
+				char n = i + 1 < len ? source.charAt(i + 1) : 0;
+				i++;
+
+				switch (c) {
+					case '.':
+						kind = DOT;
+						break;
+					case ',':
+						kind = COMMA;
+						break;
+					case ':':
+						kind = COLON;
+						break;
+					case ';':
+						kind = SEMICOLON;
+						break;
+					case '(':
+						kind = OPEN_PAREN;
+						break;
+					case ')':
+						kind = CLOSE_PAREN;
+						break;
+					case '[':
+						kind = OPEN_BRACKET;
+						break;
+					case ']':
+						kind = CLOSE_BRACKET;
+						break;
+					case '{':
+						kind = OPEN_BRACE;
+						break;
+					case '}':
+						kind = CLOSE_BRACE;
+						break;
+					case '=':
+						if (n == '=') {
+							i++;
+							kind = EQUAL;
+						} else {
+							kind = ASSIGN;
+						}
+						break;
+					case '!':
+						if (n == '=') {
+							i++;
+							kind = NOT_EQUAL;
+						} else {
+							kind = NOT;
+						}
+						break;
+					case '>':
+						if (n == '=') {
+							i++;
+							kind = GREATER_THAN_OR_EQUAL;
+						} else {
+							kind = GREATER_THAN;
+						}
+						break;
+					case '<':
+						if (n == '=') {
+							i++;
+							kind = LESS_THAN_OR_EQUAL;
+						} else {
+							kind = LESS_THAN;
+						}
+						break;
+					case '+':
+						if (n == '+') {
+							i++;
+							kind = INCREMENT;
+						} else {
+							kind = ADD;
+						}
+						break;
+					case '-':
+						if (n == '-') {
+							i++;
+							kind = DECREMENT;
+						} else if (n == '>') {
+							i++;
+							kind = ARROW;
+						} else {
+							kind = SUBTRACT;
+						}
+						break;
+					case '*':
+						kind = MULTIPLY;
+						break;
+					case '/':
+						kind = DIVIDE;
+						break;
+					case '%':
+						kind = REMAINDER;
+						break;
+					case '&':
+						kind = AND;
+						break;
+					case '|':
+						kind = OR;
+						break;
+					case '^':
+						kind = XOR;
+						break;
+					case '?':
+						kind = QUESTION;
+						break;
+					default:
+						kind = UNKNOWN;
+						break;
+				}
+			}
+
+			if (kind == CLOSE_PAREN || kind == CLOSE_BRACKET) {
+				depth--;
+			}
+			tokens.add(kind, start, i - start, depth);
+			if (kind == OPEN_PAREN || kind == OPEN_BRACKET) {
+				depth++;
+			}
+		}
+
+		return tokens;
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+}
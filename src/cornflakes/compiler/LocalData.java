@@ -1,8 +1,12 @@
 package cornflakes.compiler;
 
+import org.objectweb.asm.Label;
+
 public class LocalData extends FieldData {
 	private Block block;
 	private int index;
+	private Label start;
+	private String signature;
 
 	public LocalData(String name, String type, Block block, int index, int mods) {
 		super(name, type, mods);
@@ -26,4 +30,24 @@ public class LocalData extends FieldData {
 	public void setBlock(Block block) {
 		this.block = block;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return the label the debug entry of the local starts at, or null if
+	 *         it has none
+	 */
+	public Label getStart() {
+		return start;
+	}
+
+	public void setStart(Label start) {
+		this.start = start;
+	}
+
+	public String getSignature() {
+		return signature;
+	}
+
+	public void setSignature(String signature) {
+		this.signature = signature;
+	}
+}
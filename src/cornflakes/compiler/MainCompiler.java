@@ -2,6 +2,7 @@ package cornflakes.compiler;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,77 +11,182 @@ import org.objectweb.asm.Opcodes;
 
 public class MainCompiler implements Opcodes {
 	public static void main(String[] args) throws Exception {
+		CompilerOptions options = CompilerOptions.parse(args);
+		if (options.getStopDaemonPort() != 0) {
+			CompileDaemon.shutdown(options.getStopDaemonPort());
+			System.out.println("Stopped the daemon on port " + options.getStopDaemonPort() + ".");
+			return;
+		}
+
 		long time = System.currentTimeMillis();
 
-		List<ClassData> list = new ArrayList<>();
-		for (File file : new File(args[0]).listFiles()) {
+		if (options.getMetricsPath() != null) {
+			CompileMetrics.enable();
+		}
+		if (options.isEvents() && !CompileMetrics.enableEvents()) {
+			System.out.println("JFR events are not supported by this JVM.");
+		}
+
+		Compiler.setComputeFrames(options.isComputeFrames());
+		Compiler.setVerify(options.isVerify());
+		Compiler.setTarget(options.getTarget());
+
+		if (options.getSymbolsPath() != null) {
+			SymbolIndex index = SymbolIndex.open(Paths.get(options.getSymbolsPath()));
+			if (index == null) {
+				System.out.println("Ignoring symbol index " + options.getSymbolsPath()
+						+ ", it was built for another Java version or its classes changed.");
+			}
+			ClassData.setSymbolIndex(index);
+		}
+
+		List<File> files = new ArrayList<>();
+		for (File file : new File(options.getSourceDirectory()).listFiles()) {
 			if (file.isFile()) {
 				if (file.getName().endsWith(".cf")) {
-					list.add(Compiler.compile(file.getName(), new String(Files.readAllBytes(file.toPath()))
-							.replaceAll("\\r\\n|\\r|\\n", System.lineSeparator())));
+					files.add(file);
 				}
 			}
 		}
 
-		// compile class head
-		Compiler.executePostCompilers();
+		Path out = Paths.get(options.getOutputPath());
+		if (options.isIncremental() && !ClassOutput.isDirectory(out)) {
+			throw new CompileError("Incremental compilation needs a directory output");
+		}
+
+		// directories can take several files at once, a jar only one entry
+		ClassOutput output = new AsyncClassOutput(ClassOutput.open(out),
+				ClassOutput.isDirectory(out) ? Math.min(4, options.getParallelism()) : 1);
+		Compiler.setOutput(output);
+
+		PhaseScheduler scheduler = new PhaseScheduler(options.getParallelism());
+		try {
+			if (options.getDaemonPort() != 0) {
+				CompileDaemon.request(options.getDaemonPort(), files, output);
+			} else if (options.isIncremental()) {
+				new IncrementalCompiler(scheduler, Paths.get(options.getCachePath()), out).compile(files);
+			} else {
+				compile(scheduler, files);
+			}
+		} finally {
+			scheduler.shutdown();
+			output.close();
+			Compiler.setOutput(null);
+		}
+
+		long total = System.currentTimeMillis() - time;
+		System.out.println("Compiled after " + total + "ms.");
+		System.out.println();
+
+		CompileMetrics.commitSummary();
+		if (options.getMetricsPath() != null) {
+			CompileMetrics.writeReport(Paths.get(options.getMetricsPath()), total);
+		}
+	}
+
+	public static List<ClassData> compile(PhaseScheduler scheduler, List<File> files) {
+		return compile(scheduler, files, new ArrayList<>());
+	}
 
-		for (ClassData data : list) {
-			for (ClassData other : list) {
+	/**
+	 * @param context
+	 *            classes that are already registered and visible to the
+	 *            compiled files, but are not compiled again
+	 */
+	public static List<ClassData> compile(PhaseScheduler scheduler, List<File> files, List<ClassData> context) {
+		CompileMetrics.Timer phase = CompileMetrics.time(CompileMetrics.READ);
+		List<String[]> sources = scheduler.map(files, (file) -> Compiler.preprocess(
+				new String(Files.readAllBytes(file.toPath())).replaceAll("\\r\\n|\\r|\\n", System.lineSeparator())));
+		phase.stop();
+
+		// compile class head; parents have to be registered before the classes
+		// extending them, so this phase keeps the order of the files
+		phase = CompileMetrics.time(CompileMetrics.HEAD);
+		List<ClassData> list = new ArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.HEAD);
+			ClassData data = Compiler.compile(files.get(i).getName(), sources.get(i));
+			timer.stop(data.getClassName());
+			list.add(data);
+		}
+
+		Compiler.executePostCompilers(scheduler, CompileMetrics.HEAD);
+		phase.stop();
+
+		phase = CompileMetrics.time(CompileMetrics.IMPORTS);
+		List<ClassData> visible = new ArrayList<>(context);
+		visible.addAll(list);
+		scheduler.run(list, (data) -> {
+			for (ClassData other : visible) {
 				if (data.getPackageName().equals(other.getPackageName())) {
 					data.use(other.getClassName());
 				}
 			}
-		}
+		});
+		phase.stop();
 
 		// compile function signatures
-		Compiler.executePostCompilers();
+		phase = CompileMetrics.time(CompileMetrics.SIGNATURES);
+		Compiler.executePostCompilers(scheduler, CompileMetrics.SIGNATURES);
+		phase.stop();
 
-		for (ClassData data : list) {
+		phase = CompileMetrics.time(CompileMetrics.STATIC_INIT);
+		scheduler.run(list, (data) -> {
+			CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.STATIC_INIT, data.getClassName());
 			if (!data.hasConstructor()) {
 				new ConstructorCompiler(true).compileDefault(data, data.getClassWriter());
 			}
 
 			new StaticInitializerCompiler().compile(data, data.getClassWriter(), null, null);
-		}
+			timer.stop();
+		});
+		phase.stop();
 
 		// compile functions
-		Compiler.executePostCompilers();
+		phase = CompileMetrics.time(CompileMetrics.BODIES);
+		Compiler.executePostCompilers(scheduler, CompileMetrics.BODIES);
+		phase.stop();
 
 		// ensure all neccesary functions are implemented
-		for (ClassData data : list) {
-			if (data.isInterface() || data.hasModifier(Opcodes.ACC_ABSTRACT)) {
-				continue;
-			}
+		phase = CompileMetrics.time(CompileMetrics.VERIFICATION);
+		scheduler.run(list, (data) -> {
+			CompileMetrics.Timer timer = CompileMetrics.time(CompileMetrics.VERIFICATION, data.getClassName());
+			checkInterfaces(data);
+			timer.stop();
+		});
+		phase.stop();
 
-			for (String ifn : data.getInterfaces()) {
-				if (!ifn.equals("java/io/Serializable")) {
-					ClassData ifd = ClassData.forName(ifn);
+		// clean up and finish
+		phase = CompileMetrics.time(CompileMetrics.EMIT);
+		Compiler.endPostCompilers(scheduler);
+		phase.stop();
 
-					for (MethodData method : ifd.getMethods()) {
-						boolean match = false;
-						for (MethodData impl : data.getMethods()) {
-							if (method.toString().equals(impl.toString())) {
-								match = true;
-							}
-						}
+		return list;
+	}
 
-						if (!match) {
-							throw new CompileError("The interface " + ifd.getSimpleClassName()
-									+ " requires the method '" + method.getName() + "' to be implemented");
+	private static void checkInterfaces(ClassData data) throws ClassNotFoundException {
+		if (data.isInterface() || data.hasModifier(Opcodes.ACC_ABSTRACT)) {
+			return;
+		}
+
+		for (String ifn : data.getInterfaces()) {
+			if (!ifn.equals("java/io/Serializable")) {
+				ClassData ifd = ClassData.forName(ifn);
+
+				for (MethodData method : ifd.getMethods()) {
+					boolean match = false;
+					for (MethodData impl : data.getMethods()) {
+						if (method.toString().equals(impl.toString())) {
+							match = true;
 						}
 					}
+
+					if (!match) {
+						throw new CompileError("The interface " + ifd.getSimpleClassName() + " requires the method '"
+								+ method.getName() + "' to be implemented");
+					}
 				}
 			}
 		}
-
-		// clean up and finish
-		Compiler.endPostCompilers();
-		System.out.println("Compiled after " + (System.currentTimeMillis() - time) + "ms.");
-		System.out.println();
-
-		for (ClassData datum : list) {
-			Files.write(Paths.get("bin/" + datum.getClassName() + ".class"), datum.getByteCode());
-		}
 	}
 }
@@ -2,22 +2,24 @@ package cornflakes.compiler;
 
 import org.objectweb.asm.MethodVisitor;
 
+/**
+ * Compiles increments, decrements and terms with math operators, including
+ * string concatenation. A term is parsed into an {@link Expression} tree when
+ * it is first compiled, which is kept to write the code if the term is
+ * compiled again.
+ */
 public class MathExpressionCompiler implements GenericCompiler {
-	private static final int AND = 0;
-	private static final int ADD = 1;
-	private static final int SUBTRACT = 2;
-	private static final int MULTIPLY = 3;
-	private static final int DIVIDE = 4;
-	private static final int XOR = 5;
-	private static final int OR = 6;
+	private static final int[] OPERATORS = { Lexer.AND, Lexer.ADD, Lexer.SUBTRACT, Lexer.DIVIDE, Lexer.MULTIPLY,
+			Lexer.XOR, Lexer.OR };
 
-	private int type = -1;
 	private MethodData data;
 	private String resultType;
 	private boolean write;
 	private boolean valid = true;
 	private boolean bool;
 	private ExpressionCompiler ref;
+	private String source;
+	private Expression expression;
 
 	public MathExpressionCompiler(MethodData data, boolean b, boolean val) {
 		this.data = data;
@@ -34,221 +36,164 @@ public class MathExpressionCompiler implements GenericCompiler {
 
 	@Override
 	public void compile(ClassData data, MethodVisitor m, Block block, String body, String[] lines) {
-		if (body.length() >= 3) {
-			int start = -1;
-			for (int x = 0; x < body.length(); x++) {
-				if (!Character.isLetterOrDigit(body.charAt(x))) {
-					start = x;
-					break;
-				}
+		TokenStream tokens = Lexer.tokenize(body);
+		int last = tokens.size() - 1;
+		if (last > 0 && (tokens.kind(last) == Lexer.INCREMENT || tokens.kind(last) == Lexer.DECREMENT)) {
+			char first = tokens.kind(last) == Lexer.INCREMENT ? '+' : '-';
+			String type = pushToStack(tokens.before(last), data, m, block);
+
+			boolean isLong = type.equals("J");
+			boolean isInt = type.equals("I");
+			boolean isFloat = type.equals("F");
+			boolean isDouble = type.equals("D");
+
+			if (isLong) {
+				resultType = "J";
+			} else if (isInt) {
+				resultType = "I";
+			} else if (isFloat) {
+				resultType = "F";
+			} else if (isDouble) {
+				resultType = "D";
+			} else {
+				invalid(new CompileError("Expecting numerical variable"));
 			}
-			if (start != -1) {
-				char first = body.charAt(start);
-				if (first == '+' || first == '-') {
-					if (body.charAt(start + 1) == first) {
-						String type = pushToStack(body.substring(0, start), data, m, block);
-
-						boolean isLong = type.equals("J");
-						boolean isInt = type.equals("I");
-						boolean isFloat = type.equals("F");
-						boolean isDouble = type.equals("D");
 
-						if (isLong) {
-							resultType = "J";
-						} else if (isInt) {
-							resultType = "I";
-						} else if (isFloat) {
-							resultType = "F";
-						} else if (isDouble) {
-							resultType = "D";
-						} else {
-							invalid(new CompileError("Expecting numerical variable"));
-						}
-
-						if (this.write) {
-							int wop = Types.getOpcode(Types.PUSH, type);
-							if (wop == LDC) {
-								m.visitLdcInsn(Types.parseLiteral(type, "1"));
-							} else {
-								m.visitVarInsn(wop, 1);
-							}
-							if (this.write) {
-								this.data.ics();
-							}
+			if (this.write) {
+				Types.pushConstant(m, Types.parseLiteral(type, "1"));
+				this.data.ics();
 
-							int op = 0;
-							if (first == '+') {
-								if (isDouble) {
-									op = DADD;
-								} else if (isFloat) {
-									op = FADD;
-								} else if (isLong) {
-									op = LADD;
-								} else if (isInt) {
-									op = IADD;
-								}
-								if (this.write)
-									this.data.dcs();
-							} else {
-								if (isDouble) {
-									op = DSUB;
-								} else if (isFloat) {
-									op = FSUB;
-								} else if (isLong) {
-									op = LSUB;
-								} else if (isInt) {
-									op = ISUB;
-								}
-								if (this.write)
-									this.data.dcs();
-							}
-							m.visitInsn(op);
+				int op = 0;
+				if (first == '+') {
+					if (isDouble) {
+						op = DADD;
+					} else if (isFloat) {
+						op = FADD;
+					} else if (isLong) {
+						op = LADD;
+					} else if (isInt) {
+						op = IADD;
+					}
+					if (this.write)
+						this.data.dcs();
+				} else {
+					if (isDouble) {
+						op = DSUB;
+					} else if (isFloat) {
+						op = FSUB;
+					} else if (isLong) {
+						op = LSUB;
+					} else if (isInt) {
+						op = ISUB;
+					}
+					if (this.write)
+						this.data.dcs();
+				}
+				m.visitInsn(op);
 
-							if (ref != null && ref.getField() != null) {
-								if (ref.getField() instanceof LocalData) {
-									LocalData local = (LocalData) ref.getField();
-									m.visitVarInsn(Types.getOpcode(Types.STORE, type), local.getIndex());
-								} else {
-									m.visitFieldInsn(ref.getField().hasModifier(ACC_STATIC) ? PUTSTATIC : PUTFIELD,
-											ref.getReferenceOwner().getClassName(), ref.getReferenceName(),
-											ref.getReferenceSignature());
-								}
-							}
-						}
-						return;
+				if (ref != null && ref.getField() != null) {
+					if (ref.getField() instanceof LocalData) {
+						LocalData local = (LocalData) ref.getField();
+						m.visitVarInsn(Types.getOpcode(Types.STORE, type), local.getIndex());
+					} else {
+						m.visitFieldInsn(ref.getField().hasModifier(ACC_STATIC) ? PUTSTATIC : PUTFIELD,
+								ref.getReferenceOwner().getClassName(), ref.getReferenceName(),
+								ref.getReferenceSignature());
 					}
 				}
 			}
-		}
-
-		String[] split = null;
-		if (Strings.contains(body, "&")) {
-			split = Strings.split(body, "&", 2);
-			type = AND;
-		} else if (Strings.contains(body, "+")) {
-			split = Strings.split(body, "+", 2);
-			type = ADD;
-		} else if (Strings.contains(body, "-")) {
-			split = Strings.split(body, "-", 2);
-			type = SUBTRACT;
-		} else if (Strings.contains(body, "/")) {
-			split = Strings.split(body, "/", 2);
-			type = DIVIDE;
-		} else if (Strings.contains(body, "*")) {
-			split = Strings.split(body, "*", 2);
-			type = MULTIPLY;
-		} else if (Strings.contains(body, "^")) {
-			split = Strings.split(body, "^", 2);
-			type = XOR;
-		} else if (Strings.contains(body, "|")) {
-			split = Strings.split(body, "|", 2);
-			type = OR;
-		} else {
-			invalid(new CompileError("Expecting mathematical operator"));
 			return;
 		}
 
-		String left = split[0].trim();
-		String right = split[1].trim();
-
-		String leftType = pushToStack(left, data, m, block);
-		String rightType = pushToStack(right, data, m, block);
-		boolean isLong = leftType.equals("J") || rightType.equals("J");
-		boolean isInt = leftType.equals("I") || rightType.equals("I");
-		boolean isFloat = leftType.equals("F") || rightType.equals("F");
-		boolean isDouble = leftType.equals("D") || rightType.equals("D");
-		if (isLong) {
-			resultType = "J";
-		} else if (isInt) {
-			resultType = "I";
-		} else if (isFloat) {
-			resultType = "F";
-		} else if (isDouble) {
-			resultType = "D";
-		}
+		if (expression == null || !body.equals(source)) {
+			source = body;
+			expression = new ExpressionParser(data, this.data, block, this.bool).parseMath(body);
+			if (expression == null) {
+				invalid(new CompileError("Expecting mathematical operator"));
+				return;
+			}
 
-		if (Types.isNumeric(leftType) && Types.isNumeric(rightType)) {
-			int op = 0;
-			if (type == ADD) {
-				if (isDouble) {
-					op = DADD;
-				} else if (isFloat) {
-					op = FADD;
-				} else if (isLong) {
-					op = LADD;
-				} else if (isInt) {
-					op = IADD;
+			if (expression instanceof Expression.Concat) {
+				for (Expression part : ((Expression.Concat) expression).getParts()) {
+					if (!checkNumeric(part)) {
+						expression = null;
+						return;
+					}
+					if (part.getType() == null) {
+						expression = null;
+						invalid(new CompileError("Cannot concatenate a value without a type"));
+						return;
+					}
 				}
-				if (this.write)
-					this.data.dcs();
-			} else if (type == SUBTRACT) {
-				if (isDouble) {
-					op = DSUB;
-				} else if (isFloat) {
-					op = FSUB;
-				} else if (isLong) {
-					op = LSUB;
-				} else if (isInt) {
-					op = ISUB;
+			} else {
+				Expression.Operator operator = (Expression.Operator) expression;
+				if (!checkNumeric(operator.getLeft()) || !checkNumeric(operator.getRight())) {
+					expression = null;
+					return;
 				}
-				if (this.write)
-					this.data.dcs();
-			} else if (type == MULTIPLY) {
-				if (isDouble) {
-					op = DMUL;
-				} else if (isFloat) {
-					op = FMUL;
-				} else if (isLong) {
-					op = LMUL;
-				} else if (isInt) {
-					op = IMUL;
+
+				if (!Types.isNumeric(operator.getLeft().getType())
+						|| !Types.isNumeric(operator.getRight().getType())) {
+					expression = null;
+					invalid(new CompileError("Types must be numeric"));
+					return;
 				}
-				if (this.write)
-					this.data.dcs();
-			} else if (type == DIVIDE) {
-				if (isDouble) {
-					op = DDIV;
-				} else if (isFloat) {
-					op = FDIV;
-				} else if (isLong) {
-					op = LDIV;
-				} else if (isInt) {
-					op = IDIV;
+				if (!checkTypes(operator)) {
+					expression = null;
+					return;
 				}
-				if (this.write)
-					this.data.dcs();
-			} else if (type == AND) {
-				op = isLong ? LAND : IAND;
-			} else if (type == OR) {
-				op = isLong ? LOR : IOR;
-			} else if (type == XOR) {
-				op = isLong ? LXOR : IXOR;
 			}
-			if (this.write) {
-				m.visitInsn(op);
+
+			expression = ExpressionOptimizer.optimize(expression);
+			resultType = expression.getType();
+		}
+
+		if (this.write) {
+			new ExpressionWriter(this.data, m).write(expression);
+		}
+	}
+
+	/**
+	 * Only the operands of the outermost operator decide whether the term is
+	 * a math expression, nested operators on other types are errors.
+	 *
+	 * @return false if a nested operator has an operand which is not numeric
+	 */
+	private boolean checkNumeric(Expression expression) {
+		if (expression instanceof Expression.Operator) {
+			Expression.Operator operator = (Expression.Operator) expression;
+			if (!checkNumeric(operator.getLeft()) || !checkNumeric(operator.getRight())) {
+				return false;
 			}
-		} else {
-			invalid(new CompileError("Types must be numeric"));
+
+			if (!Types.isNumeric(operator.getLeft().getType()) || !Types.isNumeric(operator.getRight().getType())) {
+				invalid(new CompileError("Types must be numeric"));
+				return false;
+			}
+			return checkTypes(operator);
 		}
+		return true;
+	}
+
+	/**
+	 * @return false if the operator can not be applied to its numeric
+	 *         operands, such as a bitwise operator to floating point values
+	 */
+	private boolean checkTypes(Expression.Operator operator) {
+		if (operator.getType() == null) {
+			invalid(new CompileError("Cannot apply the operator to " + operator.getLeft().getType() + " and "
+					+ operator.getRight().getType()));
+			return false;
+		}
+		return true;
 	}
 
 	private String pushToStack(String term, ClassData data, MethodVisitor m, Block thisBlock) {
 		String type = Types.getType(term, "");
 		if (type != null) {
-			int oc = Types.getOpcode(Types.PUSH, type);
 			Object lit = Types.parseLiteral(type, term);
-			if (oc == LDC) {
-				if (this.write) {
-					m.visitLdcInsn(lit);
-				}
-			} else {
-				if (this.write) {
-					String toString = lit.toString();
-					m.visitVarInsn(oc, Integer.parseInt(toString));
-				}
-			}
-
 			if (this.write) {
+				Types.pushConstant(m, lit);
 				this.data.ics();
 			}
 
@@ -263,6 +208,24 @@ public class MathExpressionCompiler implements GenericCompiler {
 		}
 	}
 
+	/**
+	 * @return whether a term has a math operator on its top level or is an
+	 *         increment or decrement
+	 */
+	static boolean isMath(TokenStream tokens) {
+		int last = tokens.size() - 1;
+		return indexOfOperator(tokens) != -1
+				|| last > 0 && (tokens.kind(last) == Lexer.INCREMENT || tokens.kind(last) == Lexer.DECREMENT);
+	}
+
+	static int indexOfOperator(TokenStream tokens) {
+		int operator = -1;
+		for (int i = 0; i < OPERATORS.length && operator == -1; i++) {
+			operator = tokens.indexOf(OPERATORS[i]);
+		}
+		return operator;
+	}
+
 	public boolean isValid() {
 		return valid;
 	}
@@ -0,0 +1,18 @@
+package cornflakes.compiler;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Supplies the declared members of an imported Java class on demand, so a
+ * {@link ClassData} only creates the members that are actually looked up.
+ */
+interface MemberSource {
+	Collection<String> getMethodNames();
+
+	List<MethodData> getDeclaredMethods(String name);
+
+	List<FieldData> getDeclaredFields();
+
+	List<ConstructorData> getConstructors();
+}
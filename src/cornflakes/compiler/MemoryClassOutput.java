@@ -0,0 +1,24 @@
+package cornflakes.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps compiled classes in memory, in the order they were emitted.
+ */
+public class MemoryClassOutput implements ClassOutput {
+	private Map<String, byte[]> classes = new LinkedHashMap<>();
+
+	@Override
+	public synchronized void write(String className, byte[] bytes) {
+		classes.put(className, bytes);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public synchronized Map<String, byte[]> getClasses() {
+		return new LinkedHashMap<>(classes);
+	}
+}
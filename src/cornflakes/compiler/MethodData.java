@@ -7,12 +7,15 @@ import java.lang.reflect.Type;
 import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 public class MethodData {
@@ -23,6 +26,7 @@ public class MethodData {
 	private List<LocalData> locals = new ArrayList<>();
 	private int stackSize;
 	private int localVariables;
+	private int maxLocals;
 	private int modifiers;
 	private int blocks;
 	private boolean interfaceMethod;
@@ -43,9 +47,8 @@ public class MethodData {
 					mData.addGenericParameter(new GenericParameter(param.getName(), null, Types
 							.getTypeSignature(Strings.transformClassName(wildcard.getUpperBounds()[0].getTypeName()))));
 				}
-			} else {
-				mData.addParameter(param.getName(), Types.getTypeSignature(param.getType()));
 			}
+			mData.addParameter(param.getName(), Types.getTypeSignature(param.getType()));
 		}
 
 		return mData;
@@ -86,16 +89,60 @@ public class MethodData {
 		return currentStack;
 	}
 
+	/**
+	 * @return the first slot which is not used by a local in scope
+	 */
 	public int getLocalVariables() {
 		return localVariables;
 	}
 
 	public void setLocalVariables(int localVariables) {
 		this.localVariables = localVariables;
+		this.maxLocals = Math.max(maxLocals, localVariables);
 	}
 
 	public void addLocalVariable() {
-		this.localVariables++;
+		setLocalVariables(localVariables + 1);
+	}
+
+	/**
+	 * Reserves the slots of a local of the given type, two for longs and
+	 * doubles.
+	 *
+	 * @return the first slot of the local
+	 */
+	public int allocateLocal(String type) {
+		int index = localVariables;
+		setLocalVariables(localVariables + (type.equals("J") || type.equals("D") ? 2 : 1));
+		return index;
+	}
+
+	/**
+	 * @return the number of slots the method needs, which is the most that
+	 *         were in use at once
+	 */
+	public int getMaxLocals() {
+		return maxLocals;
+	}
+
+	/**
+	 * Ends the scope of the locals stored from the given slot on. Their debug
+	 * entries end at the given label, their names can be declared again and
+	 * their slots are reused by the following locals.
+	 */
+	public void endScope(MethodVisitor m, Label end, int slot) {
+		Iterator<LocalData> iterator = locals.iterator();
+		while (iterator.hasNext()) {
+			LocalData local = iterator.next();
+			if (local.getIndex() >= slot) {
+				if (local.getStart() != null) {
+					m.visitLocalVariable(local.getName(), local.getType(), local.getSignature(), local.getStart(),
+							end, local.getIndex());
+				}
+				iterator.remove();
+			}
+		}
+		localVariables = slot;
 	}
 
 	public boolean hasLocal(String name, Block block) {
@@ -123,7 +170,8 @@ public class MethodData {
 
 		int idx = hasModifier(Opcodes.ACC_STATIC) ? 0 : 1;
 		for (Entry<String, String> par : this.parameters.entrySet()) {
-			this.locals.add(new LocalData(par.getKey(), par.getValue(), null, idx++, 0));
+			this.locals.add(new LocalData(par.getKey(), par.getValue(), null, idx, 0));
+			idx += par.getValue().equals("J") || par.getValue().equals("D") ? 2 : 1;
 		}
 	}
 
@@ -180,6 +228,11 @@ public class MethodData {
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
 	@Override
 	public String toString() {
 		return getName() + getSignature();
@@ -218,10 +271,30 @@ public class MethodData {
 		}
 	}
 
+	/**
+	 * Counts a value pushed by code which needed up to the given number of
+	 * slots on top of the current stack.
+	 */
+	public void ics(int needed) {
+		if (this.currentStack + needed > stackSize) {
+			stackSize = this.currentStack + needed;
+		}
+		ics();
+	}
+
 	public void dcs() {
 		this.currentStack--;
 	}
 
+	/**
+	 * Sets the stack counters back after code was compiled ahead of the place
+	 * it is written to.
+	 */
+	public void resetStack(int currentStack, int stackSize) {
+		this.currentStack = currentStack;
+		this.stackSize = stackSize;
+	}
+
 	public Set<GenericParameter> getGenericParameters() {
 		return genericParameters;
 	}
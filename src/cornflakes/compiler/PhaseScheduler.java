@@ -0,0 +1,100 @@
+package cornflakes.compiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one compilation phase over every class at once. Each call to
+ * {@link #run} or {@link #map} is a barrier: it only returns once every item
+ * of the phase has finished, so the next phase always sees the complete
+ * results of the previous one.
+ */
+public class PhaseScheduler {
+	public interface Task<T> {
+		public void run(T item) throws Exception;
+	}
+
+	public interface Mapper<T, R> {
+		public R map(T item) throws Exception;
+	}
+
+	private ForkJoinPool pool;
+	private int parallelism;
+
+	public PhaseScheduler(int parallelism) {
+		if (parallelism < 1) {
+			throw new CompileError("The degree of parallelism must be at least 1");
+		}
+
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			this.pool = new ForkJoinPool(parallelism);
+		}
+	}
+
+	public <T> void run(Collection<T> items, Task<T> task) {
+		map(items, (item) -> {
+			task.run(item);
+			return null;
+		});
+	}
+
+	public <T, R> List<R> map(Collection<T> items, Mapper<T, R> mapper) {
+		List<R> results = new ArrayList<>(items.size());
+
+		if (pool == null || items.size() < 2) {
+			for (T item : items) {
+				try {
+					results.add(mapper.map(item));
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new CompileError(e);
+				}
+			}
+			return results;
+		}
+
+		List<Callable<R>> tasks = new ArrayList<>(items.size());
+		for (T item : items) {
+			tasks.add(() -> mapper.map(item));
+		}
+
+		List<Future<R>> futures = pool.invokeAll(tasks);
+		RuntimeException error = null;
+		for (Future<R> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				if (error == null) {
+					error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new CompileError(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompileError(e);
+			}
+		}
+
+		if (error != null) {
+			throw error;
+		}
+
+		return results;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package cornflakes.compiler;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reflects the members of a loaded class. Used for primitive and array types,
+ * which have no class file, and for class files ASM cannot read.
+ */
+class ReflectionMembers implements MemberSource {
+	private Class<?> cls;
+	private Map<String, List<Method>> methods;
+
+	public ReflectionMembers(Class<?> cls) {
+		this.cls = cls;
+	}
+
+	private synchronized Map<String, List<Method>> methods() {
+		if (methods == null) {
+			methods = new LinkedHashMap<>();
+			for (Method method : cls.getDeclaredMethods()) {
+				methods.computeIfAbsent(method.getName(), (key) -> new ArrayList<>()).add(method);
+			}
+		}
+		return methods;
+	}
+
+	@Override
+	public Collection<String> getMethodNames() {
+		return methods().keySet();
+	}
+
+	@Override
+	public List<MethodData> getDeclaredMethods(String name) {
+		List<MethodData> list = new ArrayList<>();
+		List<Method> methods = methods().get(name);
+		if (methods != null) {
+			for (Method method : methods) {
+				list.add(MethodData.fromJavaMethod(method));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public List<FieldData> getDeclaredFields() {
+		List<FieldData> list = new ArrayList<>();
+		for (Field field : cls.getDeclaredFields()) {
+			list.add(new FieldData(field.getName(), Types.getTypeSignature(field.getType()), field.getModifiers()));
+		}
+		return list;
+	}
+
+	@Override
+	public List<ConstructorData> getConstructors() {
+		List<ConstructorData> list = new ArrayList<>();
+		if (!cls.isInterface()) {
+			for (Constructor<?> constructor : cls.getConstructors()) {
+				list.add(ConstructorData.fromJavaConstructor(constructor));
+			}
+		}
+		return list;
+	}
+}
@@ -0,0 +1,173 @@
+package cornflakes.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers, for every source file of the last build, a hash of its contents
+ * and the exported surface of the class it declared. The surface is stored in
+ * the format of {@link ClassDataCodec}, so unchanged classes can be restored
+ * without compiling them again.
+ */
+public class SignatureCache {
+	private static final int MAGIC = 0x43464943;
+	private static final int VERSION = 5;
+
+	public static class Entry {
+		private String sourceName;
+		private byte[] sourceHash;
+		private String className;
+		private byte[] surface;
+		private Set<String> dependencies;
+
+		public Entry(String sourceName, byte[] sourceHash, String className, byte[] surface,
+				Set<String> dependencies) {
+			this.sourceName = sourceName;
+			this.sourceHash = sourceHash;
+			this.className = className;
+			this.surface = surface;
+			this.dependencies = dependencies;
+		}
+
+		public String getSourceName() {
+			return sourceName;
+		}
+
+		public byte[] getSourceHash() {
+			return sourceHash;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public byte[] getSurface() {
+			return surface;
+		}
+
+		public Set<String> getDependencies() {
+			return dependencies;
+		}
+	}
+
+	private Map<String, Entry> entries = new LinkedHashMap<>();
+
+	public static SignatureCache load(Path path) throws IOException {
+		SignatureCache cache = new SignatureCache();
+		if (!Files.isRegularFile(path)) {
+			return cache;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return cache;
+			}
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String sourceName = in.readUTF();
+				byte[] hash = new byte[in.readUnsignedShort()];
+				in.readFully(hash);
+				String className = in.readUTF();
+				byte[] surface = new byte[in.readInt()];
+				in.readFully(surface);
+
+				int deps = in.readUnsignedShort();
+				Set<String> dependencies = new LinkedHashSet<>();
+				for (int j = 0; j < deps; j++) {
+					dependencies.add(in.readUTF());
+				}
+
+				cache.put(new Entry(sourceName, hash, className, surface, dependencies));
+			}
+		} catch (EOFException e) {
+			// a truncated cache is treated like a missing one
+			return new SignatureCache();
+		}
+
+		return cache;
+	}
+
+	public void save(Path path) throws IOException {
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+
+			for (Entry entry : entries.values()) {
+				out.writeUTF(entry.sourceName);
+				out.writeShort(entry.sourceHash.length);
+				out.write(entry.sourceHash);
+				out.writeUTF(entry.className);
+				out.writeInt(entry.surface.length);
+				out.write(entry.surface);
+
+				out.writeShort(entry.dependencies.size());
+				for (String dep : entry.dependencies) {
+					out.writeUTF(dep);
+				}
+			}
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public Entry get(String sourceName) {
+		return entries.get(sourceName);
+	}
+
+	public void put(Entry entry) {
+		entries.put(entry.sourceName, entry);
+	}
+
+	public Entry remove(String sourceName) {
+		return entries.remove(sourceName);
+	}
+
+	public Collection<Entry> getEntries() {
+		return new ArrayList<>(entries.values());
+	}
+
+	public static byte[] hash(byte[] content) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new CompileError(e);
+		}
+	}
+
+	/**
+	 * @return every class the given class may reference by name: its parent,
+	 *         its interfaces and its imports
+	 */
+	public static Set<String> dependenciesOf(ClassData data) {
+		Set<String> deps = new LinkedHashSet<>();
+		deps.add(data.getParentName());
+		for (String itf : data.getInterfaces()) {
+			deps.add(itf);
+		}
+		deps.addAll(data.getUsedClasses());
+		deps.remove(data.getClassName());
+		return deps;
+	}
+}
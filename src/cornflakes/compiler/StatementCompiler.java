@@ -34,14 +34,23 @@ public class StatementCompiler extends Compiler {
 					data.use(prefix + trim0, split[1].trim());
 				}
 			}
-		} else if (body.contains("var") || body.contains("const")) {
-			String type = body.contains("var") ? "var" : "const";
+			return;
+		}
+
+		TokenStream tokens = Lexer.tokenize(body);
+		int declarator = tokens.indexOfWord("var");
+		if (declarator == -1) {
+			declarator = tokens.indexOfWord("const");
+		}
+
+		if (declarator != -1) {
+			String type = tokens.text(declarator);
 
 			int accessor = 0;
 			if (type.equals("const")) {
 				accessor |= ACC_FINAL;
 			}
-			String keywords = Strings.normalizeSpaces(body.substring(0, body.indexOf(type)));
+			String keywords = Strings.normalizeSpaces(tokens.before(declarator));
 			List<String> usedKeywords = new ArrayList<>();
 			if (!keywords.isEmpty()) {
 				String[] split = keywords.split(" ");
@@ -80,7 +89,7 @@ public class StatementCompiler extends Compiler {
 				}
 			}
 
-			String var = Strings.normalizeSpaces(body.substring(body.indexOf(type) + type.length())).trim();
+			String var = Strings.normalizeSpaces(tokens.after(declarator));
 			String[] split = var.split(":");
 			if (split.length == 1) {
 				throw new CompileError("Expecting variable type");
@@ -110,6 +119,11 @@ public class StatementCompiler extends Compiler {
 				fdata.setProposedData(value);
 			}
 
+			if ((accessor & (ACC_STATIC | ACC_FINAL)) == (ACC_STATIC | ACC_FINAL)
+					&& (value instanceof Number || value instanceof Boolean || value instanceof String)) {
+				fdata.setConstantValue(value);
+			}
+
 			cw.visitField(accessor, variableName, variableType, null, useValue ? value : null).visitEnd();
 			data.addField(fdata);
 		} else {
@@ -37,14 +37,8 @@ public class StaticInitializerCompiler extends Compiler {
 				String type = datum.getType();
 
 				if (Types.isPrimitive(type) || type.equals("Ljava/lang/String;")) {
-					int push = Types.getOpcode(Types.PUSH, type);
-					if (push == LDC) {
-						m.visitLdcInsn(datum.getProposedData());
-						method.ics();
-					} else {
-						m.visitVarInsn(push, Integer.parseInt(datum.getProposedData().toString()));
-						method.ics();
-					}
+					Types.pushConstant(m, datum.getProposedData());
+					method.ics();
 
 					m.visitFieldInsn(PUTSTATIC, data.getClassName(), datum.getName(), datum.getType());
 				} else {
@@ -3,7 +3,6 @@ package cornflakes.compiler;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class Strings {
 	private static final String[] KEYWORDS = { "package", "use", "public", "private", "protected", "func", "final",
@@ -19,15 +18,58 @@ public class Strings {
 	public static final char[] SLASH = new char[] { '/' };
 
 	public static boolean contains(String x, String value) {
-		return Pattern.compile(Pattern.quote(value) + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)").matcher(x).find();
+		return indexOf(x, value, 0) != -1;
 	}
 
 	public static String[] split(String x, String value) {
-		return x.split(Pattern.quote(value) + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
+		return split(x, value, 0);
 	}
 
 	public static String[] split(String x, String value, int max) {
-		return x.split(Pattern.quote(value) + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", max);
+		CompileMetrics.stringScan();
+		List<String> parts = new ArrayList<>();
+		boolean quote = false;
+		int last = 0;
+		int end = x.length() - value.length();
+		for (int i = 0; i <= end && (max <= 0 || parts.size() < max - 1); i++) {
+			if (!quote && x.startsWith(value, i)) {
+				parts.add(x.substring(last, i));
+				last = i + value.length();
+				i = last - 1;
+			} else if (x.charAt(i) == '"') {
+				quote = !quote;
+			}
+		}
+		parts.add(x.substring(last));
+
+		if (max == 0) {
+			int size = parts.size();
+			while (size > 1 && parts.get(size - 1).isEmpty()) {
+				parts.remove(--size);
+			}
+		}
+
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	/**
+	 * @return the index of the first occurrence of value which is not inside
+	 *         of a string literal, or -1
+	 */
+	public static int indexOf(String x, String value, int from) {
+		CompileMetrics.stringScan();
+		boolean quote = false;
+		int max = x.length() - value.length();
+		for (int i = 0; i <= max; i++) {
+			char c = x.charAt(i);
+			if (!quote && i >= from && x.startsWith(value, i)) {
+				return i;
+			}
+			if (c == '"') {
+				quote = !quote;
+			}
+		}
+		return -1;
 	}
 
 	public static char[] combineExceptions(char[]... exceptions) {
@@ -78,7 +120,25 @@ public class Strings {
 	}
 
 	public static String normalizeSpaces(String str) {
-		return str.replaceAll("\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", " ").trim();
+		StringBuilder builder = new StringBuilder(str.length());
+		boolean quote = false;
+		boolean space = false;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (!quote && Character.isWhitespace(c)) {
+				space = true;
+				continue;
+			}
+			if (space) {
+				builder.append(' ');
+				space = false;
+			}
+			if (c == '"') {
+				quote = !quote;
+			}
+			builder.append(c);
+		}
+		return builder.toString().trim();
 	}
 
 	public static String transformClassName(String cls) {
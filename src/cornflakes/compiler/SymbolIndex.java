@@ -0,0 +1,339 @@
+package cornflakes.compiler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A precompiled table of imported classes, so a compile does not have to
+ * read and reflect the JDK and runtime classes again. The file is mapped into
+ * memory and a class is only decoded when it is first resolved.
+ *
+ * <p>
+ * The platform classes are checked by the Java version. The class files and
+ * jars the other classes were read from, such as the Cornflakes runtime, are
+ * listed with their modification time, so an index is not used once they
+ * are rebuilt.
+ *
+ * <p>
+ * Layout: magic, version, Java version, source count, then one (path,
+ * modification time) record per source, class count, then one (name,
+ * offset, length) record per class, then the classes in the format of
+ * {@link ClassDataCodec}.
+ */
+public class SymbolIndex {
+	private static final int MAGIC = 0x43465349;
+	private static final int VERSION = 6;
+	private static final String[] DEFAULT_PACKAGES = { "java.lang", "java.util", "java.util.function", "java.io",
+			"java.math", "cornflakes.lang" };
+
+	private ByteBuffer buffer;
+	private Map<String, int[]> offsets;
+
+	private SymbolIndex(ByteBuffer buffer, Map<String, int[]> offsets) {
+		this.buffer = buffer;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Builds an index: <code>SymbolIndex &lt;file&gt; [package...]</code>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			throw new CompileError("Expecting an output file");
+		}
+
+		List<String> packages = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+				: Arrays.asList(DEFAULT_PACKAGES);
+
+		long time = System.currentTimeMillis();
+		int count = write(Paths.get(args[0]), packages);
+		System.out.println("Indexed " + count + " classes after " + (System.currentTimeMillis() - time) + "ms.");
+	}
+
+	/**
+	 * @return the number of classes written
+	 */
+	public static int write(Path path, List<String> packages) throws IOException {
+		List<String> names = new ArrayList<>();
+		List<byte[]> entries = new ArrayList<>();
+		Set<Path> sources = new TreeSet<>();
+
+		for (String pkg : packages) {
+			for (String name : listClasses(pkg)) {
+				ClassData data;
+				try {
+					data = ClassData.forName(name);
+					data.getMethods();
+					data.getFields();
+					data.getConstructors();
+				} catch (ClassNotFoundException | LinkageError | CompileError e) {
+					// classes that cannot be resolved cannot be imported either
+					continue;
+				}
+
+				names.add(name);
+				entries.add(ClassDataCodec.encode(data));
+
+				Path source = getSource(name);
+				if (source != null) {
+					sources.add(source);
+				}
+			}
+		}
+
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(System.getProperty("java.version"));
+
+			out.writeInt(sources.size());
+			for (Path source : sources) {
+				out.writeUTF(source.toString());
+				out.writeLong(Files.getLastModifiedTime(source).toMillis());
+			}
+
+			out.writeInt(names.size());
+
+			int offset = 0;
+			for (int i = 0; i < names.size(); i++) {
+				out.writeUTF(names.get(i));
+				out.writeInt(offset);
+				out.writeInt(entries.get(i).length);
+				offset += entries.get(i).length;
+			}
+
+			for (byte[] entry : entries) {
+				out.write(entry);
+			}
+		}
+
+		return names.size();
+	}
+
+	/**
+	 * @return the index, or null if it was built by another version of the
+	 *         index format or for another Java version, or if a class file or
+	 *         jar it was built from changed since
+	 */
+	public static SymbolIndex open(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		if (!readUTF(buffer).equals(System.getProperty("java.version"))) {
+			return null;
+		}
+
+		int sources = buffer.getInt();
+		for (int i = 0; i < sources; i++) {
+			Path source = Paths.get(readUTF(buffer));
+			long modified = buffer.getLong();
+			if (!Files.exists(source) || Files.getLastModifiedTime(source).toMillis() != modified) {
+				return null;
+			}
+		}
+
+		int count = buffer.getInt();
+		Map<String, int[]> offsets = new HashMap<>(count * 2);
+		for (int i = 0; i < count; i++) {
+			offsets.put(readUTF(buffer), new int[] { buffer.getInt(), buffer.getInt() });
+		}
+
+		buffer = buffer.slice();
+		return new SymbolIndex(buffer, offsets);
+	}
+
+	public boolean contains(String name) {
+		return offsets.containsKey(name);
+	}
+
+	/**
+	 * @return the decoded class, or null if it is not part of the index
+	 */
+	public ClassData get(String name) {
+		int[] entry = offsets.get(name);
+		if (entry == null) {
+			return null;
+		}
+
+		byte[] bytes = new byte[entry[1]];
+		ByteBuffer view = buffer.duplicate();
+		view.position(entry[0]);
+		view.get(bytes);
+
+		return ClassDataCodec.decode(bytes);
+	}
+
+	public int size() {
+		return offsets.size();
+	}
+
+	private static String readUTF(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[2 + (buffer.getShort(buffer.position()) & 0xFFFF)];
+		buffer.get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+	/**
+	 * @return the class file or jar a class is read from, or null if it is a
+	 *         platform class
+	 */
+	private static Path getSource(String name) throws IOException {
+		ClassLoader loader = SymbolIndex.class.getClassLoader();
+		URL url = loader == null ? ClassLoader.getSystemResource(name + ".class")
+				: loader.getResource(name + ".class");
+		if (url == null) {
+			return null;
+		}
+
+		URL object = ClassLoader.getSystemResource("java/lang/Object.class");
+		try {
+			switch (url.getProtocol()) {
+				case "file":
+					return Paths.get(url.toURI());
+				case "jar":
+					URL jar = ((JarURLConnection) url.openConnection()).getJarFileURL();
+					if (object != null && object.getProtocol().equals("jar")
+							&& jar.equals(((JarURLConnection) object.openConnection()).getJarFileURL())) {
+						// Java 8 and earlier keep the platform classes in rt.jar
+						return null;
+					}
+					return Paths.get(jar.toURI());
+				default:
+					return null;
+			}
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the internal names of the top level and named nested classes in
+	 *         the given package, found on the class path and in the platform
+	 *         classes
+	 */
+	private static Set<String> listClasses(String pkg) throws IOException {
+		String path = pkg.replace('.', '/');
+		Set<String> names = new TreeSet<>();
+
+		ClassLoader loader = SymbolIndex.class.getClassLoader();
+		Enumeration<URL> urls = loader == null ? ClassLoader.getSystemResources(path) : loader.getResources(path);
+		for (URL url : Collections.list(urls)) {
+			listClasses(url, path, names);
+		}
+
+		URL object = ClassLoader.getSystemResource("java/lang/Object.class");
+		if (object != null && object.getProtocol().equals("jar")) {
+			// Java 8 and earlier keep the platform classes in rt.jar
+			listClasses(((JarURLConnection) object.openConnection()).getJarFile(), path, names);
+		} else if (object != null && object.getProtocol().equals("jrt")) {
+			FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+			Path packages = jrt.getPath("/packages", pkg);
+			if (Files.isDirectory(packages)) {
+				try (DirectoryStream<Path> modules = Files.newDirectoryStream(packages)) {
+					for (Path module : modules) {
+						listClasses(jrt.getPath("/modules", module.getFileName().toString(), path), path, names);
+					}
+				}
+			}
+		}
+
+		return names;
+	}
+
+	private static void listClasses(URL url, String path, Set<String> names) throws IOException {
+		switch (url.getProtocol()) {
+			case "file":
+				try {
+					listClasses(Paths.get(url.toURI()), path, names);
+				} catch (URISyntaxException e) {
+					listClasses(new File(url.getPath()).toPath(), path, names);
+				}
+				break;
+			case "jar":
+				listClasses(((JarURLConnection) url.openConnection()).getJarFile(), path, names);
+				break;
+		}
+	}
+
+	private static void listClasses(Path directory, String path, Set<String> names) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.class")) {
+			for (Path file : files) {
+				addClass(path + "/" + file.getFileName(), names);
+			}
+		}
+	}
+
+	private static void listClasses(JarFile jar, String path, Set<String> names) {
+		Enumeration<JarEntry> entries = jar.entries();
+		while (entries.hasMoreElements()) {
+			String name = entries.nextElement().getName();
+			if (name.startsWith(path + "/") && name.indexOf('/', path.length() + 1) == -1) {
+				addClass(name, names);
+			}
+		}
+	}
+
+	private static void addClass(String file, Set<String> names) {
+		if (!file.endsWith(".class")) {
+			return;
+		}
+
+		String name = file.substring(0, file.length() - ".class".length());
+		if (name.endsWith("/module-info") || name.endsWith("/package-info")) {
+			return;
+		}
+
+		// skip anonymous and local classes
+		int nested = name.indexOf('$');
+		while (nested != -1) {
+			if (nested + 1 < name.length() && Character.isDigit(name.charAt(nested + 1))) {
+				return;
+			}
+			nested = name.indexOf('$', nested + 1);
+		}
+
+		names.add(name);
+	}
+}
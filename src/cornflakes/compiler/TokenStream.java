@@ -0,0 +1,162 @@
+package cornflakes.compiler;
+
+import java.util.Arrays;
+
+public class TokenStream {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final String source;
+	private int[] kinds = new int[INITIAL_CAPACITY];
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private int[] depths = new int[INITIAL_CAPACITY];
+	private int size;
+
+	public TokenStream(String source) {
+		this.source = source;
+	}
+
+	void add(int kind, int offset, int length, int depth) {
+		if (size == kinds.length) {
+			int cap = size * 2;
+			kinds = Arrays.copyOf(kinds, cap);
+			offsets = Arrays.copyOf(offsets, cap);
+			lengths = Arrays.copyOf(lengths, cap);
+			depths = Arrays.copyOf(depths, cap);
+		}
+
+		kinds[size] = kind;
+		offsets[size] = offset;
+		lengths[size] = length;
+		depths[size] = depth;
+		size++;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int kind(int index) {
+		return kinds[index];
+	}
+
+	public int offset(int index) {
+		return offsets[index];
+	}
+
+	public int length(int index) {
+		return lengths[index];
+	}
+
+	public int end(int index) {
+		return offsets[index] + lengths[index];
+	}
+
+	/**
+	 * @return the amount of parentheses and square brackets the token is
+	 *         nested in
+	 */
+	public int depth(int index) {
+		return depths[index];
+	}
+
+	public String text(int index) {
+		return source.substring(offsets[index], offsets[index] + lengths[index]);
+	}
+
+	public boolean is(int index, String word) {
+		return lengths[index] == word.length() && source.startsWith(word, offsets[index]);
+	}
+
+	/**
+	 * @return the first token of the given kind that is not nested inside of
+	 *         parentheses or square brackets, or -1 if there is none
+	 */
+	public int indexOf(int kind) {
+		return indexOf(kind, 0);
+	}
+
+	public int indexOf(int kind, int from) {
+		for (int i = from; i < size; i++) {
+			if (kinds[i] == kind && depths[i] == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int indexOfWord(String word) {
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] == Lexer.IDENTIFIER && depths[i] == 0 && is(i, word)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the trimmed source text in front of the given token
+	 */
+	public String before(int index) {
+		return source.substring(0, offsets[index]).trim();
+	}
+
+	/**
+	 * @return the trimmed source text following the given token
+	 */
+	public String after(int index) {
+		return source.substring(end(index)).trim();
+	}
+
+	/**
+	 * @return the trimmed source text between two tokens, both exclusive
+	 */
+	public String between(int from, int to) {
+		return source.substring(end(from), offsets[to]).trim();
+	}
+
+	/**
+	 * Splits the source on every top level token of the given kind.
+	 */
+	public String[] split(int kind) {
+		int count = 1;
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] == kind && depths[i] == 0) {
+				count++;
+			}
+		}
+
+		String[] parts = new String[count];
+		int last = 0;
+		int part = 0;
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] == kind && depths[i] == 0) {
+				parts[part++] = source.substring(last, offsets[i]).trim();
+				last = end(i);
+			}
+		}
+		parts[part] = source.substring(last).trim();
+
+		return parts;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(' ');
+			}
+			builder.append(kinds[i]).append(':').append(text(i));
+		}
+		return builder.toString();
+	}
+}
@@ -1,6 +1,8 @@
 package cornflakes.compiler;
 
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 public class Types implements Opcodes {
 	public static final int STORE = 0;
@@ -19,13 +21,20 @@ public class Types implements Opcodes {
 			}
 		}
 
-		if (type.equals("[B")) {
+		if (type.equals("[B") || type.equals("[Z")) {
 			if (op == STORE) {
 				return BASTORE;
 			} else if (op == LOAD) {
 				return BALOAD;
 			}
 		}
+		if (type.equals("[C")) {
+			if (op == STORE) {
+				return CASTORE;
+			} else if (op == LOAD) {
+				return CALOAD;
+			}
+		}
 		if (type.equals("[J")) {
 			if (op == STORE) {
 				return LASTORE;
@@ -71,6 +80,61 @@ public class Types implements Opcodes {
 		throw new CompileError("Could not get array opcode for type '" + type + "' with code " + op);
 	}
 
+	/**
+	 * Pushes a literal with the shortest instruction for its value, so the
+	 * constant pool is only used for values that do not fit into one.
+	 */
+	public static void pushConstant(MethodVisitor m, Object value) {
+		if (value instanceof Boolean) {
+			m.visitInsn((Boolean) value ? ICONST_1 : ICONST_0);
+		} else if (value instanceof Character) {
+			pushInt(m, (Character) value);
+		} else if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+			pushInt(m, ((Number) value).intValue());
+		} else if (value instanceof Long) {
+			long l = (Long) value;
+			if (l == 0 || l == 1) {
+				m.visitInsn(LCONST_0 + (int) l);
+			} else {
+				m.visitLdcInsn(value);
+			}
+		} else if (value instanceof Float) {
+			// compared by bits, as -0.0 has to be loaded from the pool
+			float f = (Float) value;
+			if (Float.floatToRawIntBits(f) == 0 || f == 1 || f == 2) {
+				m.visitInsn(FCONST_0 + (int) f);
+			} else {
+				m.visitLdcInsn(value);
+			}
+		} else if (value instanceof Double) {
+			double d = (Double) value;
+			if (Double.doubleToRawLongBits(d) == 0 || d == 1) {
+				m.visitInsn(DCONST_0 + (int) d);
+			} else {
+				m.visitLdcInsn(value);
+			}
+		} else {
+			m.visitLdcInsn(value);
+		}
+	}
+
+	private static void pushInt(MethodVisitor m, int value) {
+		if (value >= -1 && value <= 5) {
+			m.visitInsn(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			m.visitIntInsn(BIPUSH, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			m.visitIntInsn(SIPUSH, value);
+		} else {
+			m.visitLdcInsn(value);
+		}
+	}
+
+	/**
+	 * @return the opcode for the given operation on a value of the given type;
+	 *         literals should be pushed with {@link #pushConstant}, which picks
+	 *         the instruction by value instead of by type
+	 */
 	public static int getOpcode(int op, String type) {
 		if (type == null) {
 			if (op == STORE) {
@@ -257,7 +321,7 @@ public class Types implements Opcodes {
 			return Short.parseShort(val);
 		} else if (type.equals("i32") || type.equals("I")) {
 			return Integer.parseInt(val);
-		} else if (type.equals("i64") || type.equals("L")) {
+		} else if (type.equals("i64") || type.equals("J")) {
 			return Long.parseLong(val);
 		}
 		throw new CompileError("Invalid literal: " + val);
@@ -429,6 +493,38 @@ public class Types implements Opcodes {
 		}
 	}
 
+	public static String getTypeSignature(Type type) {
+		switch (type.getSort()) {
+			case Type.ARRAY:
+				return "[" + getTypeSignature(Type.getType(type.getDescriptor().substring(1)));
+			case Type.OBJECT:
+				switch (type.getInternalName()) {
+					case "java/lang/Void":
+						return "V";
+					case "java/lang/Boolean":
+						return "Z";
+					case "java/lang/Byte":
+						return "B";
+					case "java/lang/Character":
+						return "C";
+					case "java/lang/Double":
+						return "D";
+					case "java/lang/Float":
+						return "F";
+					case "java/lang/Integer":
+						return "I";
+					case "java/lang/Long":
+						return "J";
+					case "java/lang/Short":
+						return "S";
+					default:
+						return type.getDescriptor();
+				}
+			default:
+				return type.getDescriptor();
+		}
+	}
+
 	public static String getTypeSignature(String type) {
 		type = unpadSignature(type);
 
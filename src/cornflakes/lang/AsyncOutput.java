@@ -0,0 +1,177 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects the output of every thread in a buffer of its own, which a single
+ * writer thread encodes and writes to a channel once it holds
+ * {@link #BATCH_SIZE} characters or {@link #INTERVAL} milliseconds have
+ * passed. The output of one thread keeps its order, but lines of different
+ * threads are only ordered by when they were drained.
+ */
+class AsyncOutput implements Runnable {
+	private static final int BATCH_SIZE = 8192;
+	private static final int MAX_PENDING = 1 << 20;
+	private static final long INTERVAL = 100;
+
+	private static class Buffer {
+		private final Thread owner = Thread.currentThread();
+		private StringBuilder text = new StringBuilder(BATCH_SIZE);
+	}
+
+	private final WritableByteChannel channel;
+	private final boolean closeChannel;
+	private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final ByteBuffer bytes = ByteBuffer.allocate(BATCH_SIZE * 4);
+	private StringBuilder spare = new StringBuilder(BATCH_SIZE);
+
+	private final Set<Buffer> buffers = ConcurrentHashMap.newKeySet();
+	private final ThreadLocal<Buffer> local = ThreadLocal.withInitial(() -> {
+		Buffer buffer = new Buffer();
+		buffers.add(buffer);
+		return buffer;
+	});
+
+	private final Thread thread = new Thread(this, "Console output");
+	private volatile boolean closed;
+
+	/**
+	 * @param closeChannel
+	 *            whether the channel is closed together with this output
+	 */
+	AsyncOutput(WritableByteChannel channel, boolean closeChannel) {
+		this.channel = channel;
+		this.closeChannel = closeChannel;
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return false if the output was closed, in which case nothing was
+	 *         written
+	 */
+	boolean write(CharSequence str, String newLine) {
+		Buffer buffer = local.get();
+		int length;
+		synchronized (buffer) {
+			if (closed) {
+				return false;
+			}
+
+			buffer.text.append(str);
+			if (newLine != null) {
+				buffer.text.append(newLine);
+			}
+			length = buffer.text.length();
+		}
+
+		// a thread which writes faster than the writer thread drains its own
+		// buffer instead of letting it grow
+		if (length >= MAX_PENDING) {
+			synchronized (this) {
+				drain(buffer);
+				writeBytes();
+			}
+		} else if (length >= BATCH_SIZE) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+
+	@Override
+	public void run() {
+		while (!closed) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(INTERVAL));
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffers of all threads.
+	 */
+	synchronized void flush() {
+		Iterator<Buffer> it = buffers.iterator();
+		while (it.hasNext()) {
+			Buffer buffer = it.next();
+			if (!drain(buffer) && !buffer.owner.isAlive()) {
+				it.remove();
+			}
+		}
+		writeBytes();
+	}
+
+	/**
+	 * Stops the writer thread and writes the remaining output. Threads which
+	 * write afterwards are told so by {@link #write(CharSequence, String)}.
+	 */
+	void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		flush();
+
+		if (closeChannel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// like System.out, a closed output is not reported
+			}
+		}
+	}
+
+	/**
+	 * Swaps the text of a buffer for an empty one and encodes it, writing
+	 * whenever the bytes fill up. Must be called while holding this lock.
+	 *
+	 * @return whether the buffer had any text
+	 */
+	private boolean drain(Buffer buffer) {
+		synchronized (buffer) {
+			StringBuilder text = buffer.text;
+			buffer.text = spare;
+			spare = text;
+		}
+		if (spare.length() == 0) {
+			return false;
+		}
+
+		CharBuffer chars = CharBuffer.wrap(spare);
+		encoder.reset();
+		while (encoder.encode(chars, bytes, true).isOverflow()) {
+			writeBytes();
+		}
+		while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+			writeBytes();
+		}
+
+		spare.setLength(0);
+		if (spare.capacity() > MAX_PENDING) {
+			spare = new StringBuilder(BATCH_SIZE);
+		}
+		return true;
+	}
+
+	private void writeBytes() {
+		bytes.flip();
+		try {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		} catch (IOException e) {
+			// like System.out, a closed output is not reported
+		}
+		bytes.clear();
+	}
+}
@@ -1,41 +1,372 @@
 package cornflakes.lang;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Console {
-	private static final Scanner in = new Scanner(System.in);
+	private static final int MAX_TEMPLATES = 1024;
+	private static final int MAX_BUFFER = 8192;
 
-	private static String replace(Object msg, Object... values) {
-		if (msg == null) {
-			return null;
+	private static Input input = new Input(System.in, Console::flush);
+	private static Scanner scanner;
+	private static final PrintStream stdout = System.out;
+	private static final Writer out = new BufferedWriter(new OutputStreamWriter(stdout), MAX_BUFFER);
+	private static final String newLine = System.lineSeparator();
+	private static volatile AsyncOutput async;
+	private static volatile boolean pending;
+
+	private static final Map<String, Template> templates = new ConcurrentHashMap<>();
+	private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+	private static final ThreadLocal<char[]> chars = ThreadLocal.withInitial(() -> new char[128]);
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(Console::flush));
+
+		System.setOut(new PrintStream(new Ordered(stdout), true));
+		System.setErr(new PrintStream(new Ordered(System.err), true));
+	}
+
+	/**
+	 * Output written to System.out or System.err directly would overtake the
+	 * output of this class which is still buffered, so the standard streams
+	 * are replaced with ones which flush it first.
+	 */
+	private static class Ordered extends OutputStream {
+		private final OutputStream target;
+
+		private Ordered(OutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (pending) {
+				Console.flush();
+			}
+			target.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (pending) {
+				Console.flush();
+			}
+			target.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target.flush();
+		}
+	}
+
+	/**
+	 * The buffer of a thread, which is taken from {@link Console#buffer()}
+	 * until the message is written. A message which is built while it is
+	 * taken, such as one printed by the toString() of an argument, gets a
+	 * buffer of its own.
+	 */
+	private static class Buffer {
+		private StringBuilder str = new StringBuilder(128);
+		private boolean taken;
+	}
+
+	/**
+	 * A format string split at its <code>{n}</code> placeholders. Literal text
+	 * is kept in <code>literals</code>, and <code>indices[i]</code> is the
+	 * argument which follows <code>literals[i]</code>, or -1 after the last
+	 * literal.
+	 */
+	private static class Template {
+		private final String[] literals;
+		private final int[] indices;
+		private final int highest;
+
+		private Template(String[] literals, int[] indices, int highest) {
+			this.literals = literals;
+			this.indices = indices;
+			this.highest = highest;
+		}
+
+		private static Template parse(String format) {
+			List<String> literals = new ArrayList<>();
+			List<Integer> indices = new ArrayList<>();
+			int highest = -1;
+
+			int start = 0;
+			int open = format.indexOf('{');
+			while (open != -1) {
+				int close = open + 1;
+				int index = 0;
+				while (close < format.length() && close - open <= 9 && Character.isDigit(format.charAt(close))) {
+					index = index * 10 + (format.charAt(close) - '0');
+					close++;
+				}
+
+				if (close > open + 1 && close < format.length() && format.charAt(close) == '}') {
+					literals.add(format.substring(start, open));
+					indices.add(index);
+					highest = Math.max(highest, index);
+					start = close + 1;
+					open = format.indexOf('{', start);
+				} else {
+					open = format.indexOf('{', open + 1);
+				}
+			}
+			literals.add(format.substring(start));
+			indices.add(-1);
+
+			int[] array = new int[indices.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = indices.get(i);
+			}
+			return new Template(literals.toArray(new String[literals.size()]), array, highest);
 		}
-		if (!(msg instanceof String)) {
-			return msg.toString();
+
+		private void append(StringBuilder str, Object[] values) {
+			for (int i = 0; i < literals.length; i++) {
+				str.append(literals[i]);
+
+				int index = indices[i];
+				if (index == -1) {
+					continue;
+				}
+				if (index < values.length) {
+					str.append(values[index]);
+				} else {
+					str.append('{').append(index).append('}');
+				}
+			}
 		}
+	}
 
-		String str = (String) msg;
-		for (int i = 0; i < values.length; i++) {
-			str = str.replace("{" + i + "}", values[i] == null ? "null" : values[i].toString());
+	private static Template template(String format) {
+		Template template = templates.get(format);
+		if (template == null) {
+			template = Template.parse(format);
+			if (templates.size() < MAX_TEMPLATES) {
+				templates.put(format, template);
+			}
 		}
+		return template;
+	}
 
+	/**
+	 * Placeholders are substituted in one pass, so text inserted for one
+	 * argument is never searched for further placeholders.
+	 */
+	private static StringBuilder replace(Object msg, Object... values) {
+		StringBuilder str = buffer();
+
+		try {
+			if (msg instanceof String && values.length > 0) {
+				Template template = template((String) msg);
+				if (template.highest == -1) {
+					str.append((String) msg);
+				} else {
+					template.append(str, values);
+				}
+			} else {
+				str.append(msg);
+			}
+		} catch (Throwable e) {
+			release(str);
+			throw e;
+		}
 		return str;
 	}
 
+	/**
+	 * @return the empty buffer of this thread, which the compiler appends the
+	 *         parts of a literal template to before passing it to
+	 *         {@link #write(StringBuilder, boolean)}, or a new one if the
+	 *         buffer is taken
+	 */
+	public static StringBuilder buffer() {
+		Buffer buffer = buffers.get();
+		if (buffer.taken) {
+			return new StringBuilder(128);
+		}
+
+		buffer.taken = true;
+		buffer.str.setLength(0);
+		return buffer.str;
+	}
+
+	private static void release(StringBuilder str) {
+		Buffer buffer = buffers.get();
+		if (buffer.str == str) {
+			buffer.taken = false;
+			if (str.capacity() > MAX_BUFFER) {
+				buffer.str = new StringBuilder(128);
+			}
+		}
+	}
+
+	public static void write(StringBuilder str, boolean line) {
+		try {
+			AsyncOutput async = Console.async;
+			if (async == null || !async.write(str, line ? newLine : null)) {
+				writeDirect(str, line);
+			}
+			pending = true;
+		} finally {
+			release(str);
+		}
+	}
+
+	private static void writeDirect(StringBuilder str, boolean line) {
+		int length = str.length();
+		char[] buffer = chars.get();
+		if (buffer.length < length) {
+			buffer = new char[Math.max(length, buffer.length * 2)];
+			if (buffer.length <= MAX_BUFFER) {
+				chars.set(buffer);
+			}
+		}
+		str.getChars(0, length, buffer, 0);
+
+		try {
+			synchronized (out) {
+				out.write(buffer, 0, length);
+				if (line) {
+					out.write(newLine);
+				}
+			}
+		} catch (IOException e) {
+			// like System.out, a closed output is not reported
+		}
+	}
+
 	public static void println(Object msg, Object... values) {
-		String str = replace(msg, values);
-		System.out.println(str);
+		write(replace(msg, values), true);
 	}
 
 	public static void print(Object msg, Object... values) {
-		String str = replace(msg, values);
-		System.out.print(str);
+		write(replace(msg, values), false);
+	}
+
+	/**
+	 * Output is buffered and only written when the buffer fills, before
+	 * waiting for input, before anything is written to System.out or
+	 * System.err, on this call and when the program exits.
+	 */
+	public static void flush() {
+		pending = false;
+
+		AsyncOutput async = Console.async;
+		if (async != null) {
+			async.flush();
+		}
+
+		try {
+			synchronized (out) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			// like System.out, a closed output is not reported
+		}
+	}
+
+	/**
+	 * Writes the output of every thread into a buffer of its own, which a
+	 * single thread writes to stdout in batches. The output of different
+	 * threads may be interleaved at line boundaries in any order.
+	 */
+	public static void startAsync() {
+		startAsync(new AsyncOutput(Channels.newChannel(stdout), false));
+	}
+
+	/**
+	 * Like {@link #startAsync()}, but writes the output to the given file
+	 * instead of stdout.
+	 */
+	public static void startAsync(String path) throws IOException {
+		startAsync(new AsyncOutput(FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), true));
+	}
+
+	private static synchronized void startAsync(AsyncOutput output) {
+		stopAsync();
+		flush();
+		async = output;
+	}
+
+	/**
+	 * Writes the remaining output of all threads and goes back to writing
+	 * directly.
+	 */
+	public static synchronized void stopAsync() {
+		AsyncOutput async = Console.async;
+		if (async != null) {
+			Console.async = null;
+			async.close();
+		}
 	}
 
+	/**
+	 * Reads from the given input instead, such as a file mapped with
+	 * {@link Input#map(String)}.
+	 */
+	public static void setInput(Input input) {
+		Console.input = input;
+		scanner = null;
+	}
+
+	/**
+	 * The scanner buffers input itself, so it should not be mixed with the
+	 * other read methods.
+	 */
 	public static Scanner getInput() {
-		return in;
+		if (scanner == null) {
+			scanner = new Scanner(input);
+		}
+		return scanner;
+	}
+
+	public static boolean hasNext() {
+		return input.hasNext();
+	}
+
+	public static int readInt() {
+		return input.readInt();
+	}
+
+	public static long readLong() {
+		return input.readLong();
+	}
+
+	public static double readDouble() {
+		return input.readDouble();
+	}
+
+	public static String readToken() {
+		return input.readToken();
 	}
 
 	public static String readLine() {
-		return in.nextLine();
+		return input.readLine();
+	}
+
+	public static boolean readLine(StringBuilder line) {
+		return input.readLine(line);
+	}
+
+	public static Iterator<String> lines() {
+		return input.lines();
 	}
 }
@@ -0,0 +1,354 @@
+package cornflakes.lang;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads numbers, tokens and lines straight from the bytes of a stream or of a
+ * memory mapped file. Numbers are parsed without building a string, and lines
+ * and tokens are collected in a buffer which is reused. An input is not safe
+ * for use by several threads at once.
+ */
+public class Input extends InputStream {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final long REGION_SIZE = 1 << 30;
+
+	private InputStream stream;
+	private Flushable output;
+
+	private FileChannel channel;
+	private ByteBuffer region;
+	private long mapped;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean ended;
+
+	private byte[] text = new byte[128];
+
+	public Input(InputStream stream) {
+		this(stream, null);
+	}
+
+	/**
+	 * @param output
+	 *            flushed before waiting for more bytes of the stream, so a
+	 *            prompt is shown before its answer is read
+	 */
+	public Input(InputStream stream, Flushable output) {
+		this.stream = stream;
+		this.output = output;
+	}
+
+	private Input(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Maps a file into memory in regions of up to 1GB, which are read without
+	 * any system calls.
+	 */
+	public static Input map(String path) throws IOException {
+		return new Input(FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+	}
+
+	private boolean fill() {
+		if (ended) {
+			return false;
+		}
+
+		try {
+			position = 0;
+			limit = 0;
+			if (channel != null) {
+				if (region == null || !region.hasRemaining()) {
+					long size = channel.size();
+					if (mapped >= size) {
+						ended = true;
+						return false;
+					}
+					region = channel.map(FileChannel.MapMode.READ_ONLY, mapped, Math.min(REGION_SIZE, size - mapped));
+					mapped += region.remaining();
+				}
+				limit = Math.min(buffer.length, region.remaining());
+				region.get(buffer, 0, limit);
+			} else {
+				if (output != null) {
+					output.flush();
+				}
+				while (limit == 0) {
+					int read = stream.read(buffer, 0, buffer.length);
+					if (read == -1) {
+						ended = true;
+						return false;
+					}
+					limit = read;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int peek() {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position] & 0xFF;
+	}
+
+	private int skipWhitespace() {
+		int c;
+		while ((c = peek()) != -1 && c <= ' ') {
+			position++;
+		}
+		return c;
+	}
+
+	private void append(int start, int end, int length) {
+		int count = end - start;
+		if (length + count > text.length) {
+			text = Arrays.copyOf(text, Math.max(length + count, text.length * 2));
+		}
+		System.arraycopy(buffer, start, text, length, count);
+	}
+
+	/**
+	 * @return whether a token is left before the end of the input
+	 */
+	public boolean hasNext() {
+		return skipWhitespace() != -1;
+	}
+
+	/**
+	 * @throws NoSuchElementException
+	 *             at the end of the input
+	 * @throws NumberFormatException
+	 *             if the next token is not a number which fits into a long
+	 */
+	public long readLong() {
+		int c = skipWhitespace();
+		if (c == -1) {
+			throw new NoSuchElementException();
+		}
+
+		boolean negative = c == '-';
+		if (negative || c == '+') {
+			position++;
+			c = peek();
+		}
+		if (c < '0' || c > '9') {
+			throw new NumberFormatException("Expecting a number");
+		}
+
+		// accumulated as a negative number, so the smallest long fits
+		long value = 0;
+		while (c >= '0' && c <= '9') {
+			int digit = c - '0';
+			if (value < (Long.MIN_VALUE + digit) / 10) {
+				throw new NumberFormatException("Number out of range");
+			}
+			value = value * 10 - digit;
+			position++;
+			c = peek();
+		}
+
+		if (c > ' ') {
+			throw new NumberFormatException("Expecting a number");
+		}
+		if (!negative) {
+			if (value == Long.MIN_VALUE) {
+				throw new NumberFormatException("Number out of range");
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * @see #readLong()
+	 */
+	public int readInt() {
+		long value = readLong();
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Number out of range");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * @throws NoSuchElementException
+	 *             at the end of the input
+	 */
+	public double readDouble() {
+		String token = readToken();
+		if (token == null) {
+			throw new NoSuchElementException();
+		}
+		return Double.parseDouble(token);
+	}
+
+	/**
+	 * @return the next run of characters up to a whitespace, or null at the end
+	 *         of the input
+	 */
+	public String readToken() {
+		if (skipWhitespace() == -1) {
+			return null;
+		}
+
+		int length = 0;
+		while (position < limit || fill()) {
+			int start = position;
+			while (position < limit && (buffer[position] & 0xFF) > ' ') {
+				position++;
+			}
+			append(start, position, length);
+			length += position - start;
+
+			if (position < limit) {
+				break;
+			}
+		}
+		return new String(text, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private int readLineBytes() {
+		if (peek() == -1) {
+			return -1;
+		}
+
+		int length = 0;
+		while (position < limit || fill()) {
+			int start = position;
+			while (position < limit && buffer[position] != '\n') {
+				position++;
+			}
+			append(start, position, length);
+			length += position - start;
+
+			if (position < limit) {
+				position++;
+				break;
+			}
+		}
+
+		if (length > 0 && text[length - 1] == '\r') {
+			length--;
+		}
+		return length;
+	}
+
+	/**
+	 * @return the next line without its line break, or null at the end of the
+	 *         input
+	 */
+	public String readLine() {
+		int length = readLineBytes();
+		return length == -1 ? null : new String(text, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends the next line without its line break to the given builder, so
+	 * the same builder can be used for every line.
+	 *
+	 * @return false at the end of the input
+	 */
+	public boolean readLine(StringBuilder line) {
+		int length = readLineBytes();
+		if (length == -1) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (text[i] < 0) {
+				line.append(new String(text, i, length - i, StandardCharsets.UTF_8));
+				return true;
+			}
+			line.append((char) text[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the remaining lines, read while iterating
+	 */
+	public Iterator<String> lines() {
+		return new Iterator<String>() {
+			private String next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					next = readLine();
+				}
+				return next != null;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				String line = next;
+				next = null;
+				return line;
+			}
+		};
+	}
+
+	@Override
+	public int read() {
+		int c = peek();
+		if (c != -1) {
+			position++;
+		}
+		return c;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == limit && !fill()) {
+			return -1;
+		}
+
+		int count = Math.min(len, limit - position);
+		System.arraycopy(buffer, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		int buffered = limit - position;
+		if (channel != null) {
+			long left = (region == null ? 0 : region.remaining()) + channel.size() - mapped;
+			return (int) Math.min(Integer.MAX_VALUE, buffered + left);
+		}
+		return buffered + stream.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		} else {
+			stream.close();
+		}
+	}
+}
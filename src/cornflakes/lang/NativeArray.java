@@ -0,0 +1,107 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An array whose elements live outside of the heap, in direct buffers or
+ * mapped regions of a file of up to 1GB each, so it can hold more than 2^31
+ * elements and the garbage collector never scans its contents. Elements are
+ * indexed by longs and stored in native byte order; the memory is released
+ * when the array is collected.
+ */
+public abstract class NativeArray {
+	protected static final int CHUNK_SHIFT = 30;
+	protected static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	protected final ByteBuffer[] chunks;
+	private final long length;
+	private final int shift;
+	private final boolean mapped;
+
+	/**
+	 * Allocates zeroed memory for the given number of elements.
+	 *
+	 * @param shift
+	 *            the base 2 logarithm of the size of an element in bytes
+	 */
+	protected NativeArray(long length, int shift) {
+		if (length < 0 || length > Long.MAX_VALUE >> shift) {
+			throw new IllegalArgumentException("Invalid length: " + length);
+		}
+		this.length = length;
+		this.shift = shift;
+		this.mapped = false;
+
+		long bytes = length << shift;
+		chunks = new ByteBuffer[chunkCount(bytes)];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(chunkSize(bytes, i)).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/**
+	 * Maps the elements of a file without reading it. Bytes at the end of the
+	 * file which do not fill a whole element are left out. The mapping stays
+	 * valid after the file is closed.
+	 */
+	protected NativeArray(String path, boolean writable, int shift) throws IOException {
+		this.shift = shift;
+		this.mapped = true;
+
+		try (FileChannel channel = writable
+				? FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			length = channel.size() >> shift;
+
+			long bytes = length << shift;
+			chunks = new ByteBuffer[chunkCount(bytes)];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+						(long) i << CHUNK_SHIFT, chunkSize(bytes, i)).order(ByteOrder.nativeOrder());
+			}
+		}
+	}
+
+	private static int chunkCount(long bytes) {
+		return (int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+	}
+
+	private static int chunkSize(long bytes, int chunk) {
+		return (int) Math.min(1 << CHUNK_SHIFT, bytes - ((long) chunk << CHUNK_SHIFT));
+	}
+
+	/**
+	 * @return the byte position of an element, whose chunk is the position
+	 *         shifted by {@link #CHUNK_SHIFT} and whose offset in the chunk is
+	 *         the position masked by {@link #CHUNK_MASK}
+	 */
+	protected final long position(long index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		}
+		return index << shift;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Writes the changes to a mapped file to the storage device; does nothing
+	 * for arrays which are not mapped.
+	 */
+	public void force() {
+		// direct buffers are mapped buffers as well, which can not be forced
+		if (mapped) {
+			for (ByteBuffer chunk : chunks) {
+				((MappedByteBuffer) chunk).force();
+			}
+		}
+	}
+}
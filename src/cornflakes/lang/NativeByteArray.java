@@ -0,0 +1,49 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+
+/**
+ * An off-heap array of bytes, created with <code>offheap(byte, n)</code>, or
+ * over a file with {@link #map(String)}.
+ */
+public class NativeByteArray extends NativeArray {
+	public NativeByteArray(long length) {
+		super(length, 0);
+	}
+
+	private NativeByteArray(String path, boolean writable) throws IOException {
+		super(path, writable, 0);
+	}
+
+	/**
+	 * Maps the bytes of a file read-only.
+	 */
+	public static NativeByteArray map(String path) throws IOException {
+		return new NativeByteArray(path, false);
+	}
+
+	/**
+	 * Maps the bytes of a file; writes to a writable array change the file.
+	 */
+	public static NativeByteArray map(String path, boolean writable) throws IOException {
+		return new NativeByteArray(path, writable);
+	}
+
+	public byte _index_(long index) {
+		return get(index);
+	}
+
+	public void _index_(long index, byte value) {
+		set(index, value);
+	}
+
+	public byte get(long index) {
+		long position = position(index);
+		return chunks[(int) (position >>> CHUNK_SHIFT)].get((int) position & CHUNK_MASK);
+	}
+
+	public void set(long index, byte value) {
+		long position = position(index);
+		chunks[(int) (position >>> CHUNK_SHIFT)].put((int) position & CHUNK_MASK, value);
+	}
+}
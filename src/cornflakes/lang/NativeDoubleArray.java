@@ -0,0 +1,49 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+
+/**
+ * An off-heap array of f64 values, created with <code>offheap(f64, n)</code>, or
+ * over a file with {@link #map(String)}.
+ */
+public class NativeDoubleArray extends NativeArray {
+	public NativeDoubleArray(long length) {
+		super(length, 3);
+	}
+
+	private NativeDoubleArray(String path, boolean writable) throws IOException {
+		super(path, writable, 3);
+	}
+
+	/**
+	 * Maps the f64 values of a file read-only.
+	 */
+	public static NativeDoubleArray map(String path) throws IOException {
+		return new NativeDoubleArray(path, false);
+	}
+
+	/**
+	 * Maps the f64 values of a file; writes to a writable array change the file.
+	 */
+	public static NativeDoubleArray map(String path, boolean writable) throws IOException {
+		return new NativeDoubleArray(path, writable);
+	}
+
+	public double _index_(long index) {
+		return get(index);
+	}
+
+	public void _index_(long index, double value) {
+		set(index, value);
+	}
+
+	public double get(long index) {
+		long position = position(index);
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) position & CHUNK_MASK);
+	}
+
+	public void set(long index, double value) {
+		long position = position(index);
+		chunks[(int) (position >>> CHUNK_SHIFT)].putDouble((int) position & CHUNK_MASK, value);
+	}
+}
@@ -0,0 +1,49 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+
+/**
+ * An off-heap array of f32 values, created with <code>offheap(f32, n)</code>, or
+ * over a file with {@link #map(String)}.
+ */
+public class NativeFloatArray extends NativeArray {
+	public NativeFloatArray(long length) {
+		super(length, 2);
+	}
+
+	private NativeFloatArray(String path, boolean writable) throws IOException {
+		super(path, writable, 2);
+	}
+
+	/**
+	 * Maps the f32 values of a file read-only.
+	 */
+	public static NativeFloatArray map(String path) throws IOException {
+		return new NativeFloatArray(path, false);
+	}
+
+	/**
+	 * Maps the f32 values of a file; writes to a writable array change the file.
+	 */
+	public static NativeFloatArray map(String path, boolean writable) throws IOException {
+		return new NativeFloatArray(path, writable);
+	}
+
+	public float _index_(long index) {
+		return get(index);
+	}
+
+	public void _index_(long index, float value) {
+		set(index, value);
+	}
+
+	public float get(long index) {
+		long position = position(index);
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getFloat((int) position & CHUNK_MASK);
+	}
+
+	public void set(long index, float value) {
+		long position = position(index);
+		chunks[(int) (position >>> CHUNK_SHIFT)].putFloat((int) position & CHUNK_MASK, value);
+	}
+}
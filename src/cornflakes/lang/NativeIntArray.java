@@ -0,0 +1,49 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+
+/**
+ * An off-heap array of i32 values, created with <code>offheap(i32, n)</code>, or
+ * over a file with {@link #map(String)}.
+ */
+public class NativeIntArray extends NativeArray {
+	public NativeIntArray(long length) {
+		super(length, 2);
+	}
+
+	private NativeIntArray(String path, boolean writable) throws IOException {
+		super(path, writable, 2);
+	}
+
+	/**
+	 * Maps the i32 values of a file read-only.
+	 */
+	public static NativeIntArray map(String path) throws IOException {
+		return new NativeIntArray(path, false);
+	}
+
+	/**
+	 * Maps the i32 values of a file; writes to a writable array change the file.
+	 */
+	public static NativeIntArray map(String path, boolean writable) throws IOException {
+		return new NativeIntArray(path, writable);
+	}
+
+	public int _index_(long index) {
+		return get(index);
+	}
+
+	public void _index_(long index, int value) {
+		set(index, value);
+	}
+
+	public int get(long index) {
+		long position = position(index);
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) position & CHUNK_MASK);
+	}
+
+	public void set(long index, int value) {
+		long position = position(index);
+		chunks[(int) (position >>> CHUNK_SHIFT)].putInt((int) position & CHUNK_MASK, value);
+	}
+}
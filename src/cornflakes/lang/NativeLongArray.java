@@ -0,0 +1,49 @@
+package cornflakes.lang;
+
+import java.io.IOException;
+
+/**
+ * An off-heap array of i64 values, created with <code>offheap(i64, n)</code>, or
+ * over a file with {@link #map(String)}.
+ */
+public class NativeLongArray extends NativeArray {
+	public NativeLongArray(long length) {
+		super(length, 3);
+	}
+
+	private NativeLongArray(String path, boolean writable) throws IOException {
+		super(path, writable, 3);
+	}
+
+	/**
+	 * Maps the i64 values of a file read-only.
+	 */
+	public static NativeLongArray map(String path) throws IOException {
+		return new NativeLongArray(path, false);
+	}
+
+	/**
+	 * Maps the i64 values of a file; writes to a writable array change the file.
+	 */
+	public static NativeLongArray map(String path, boolean writable) throws IOException {
+		return new NativeLongArray(path, writable);
+	}
+
+	public long _index_(long index) {
+		return get(index);
+	}
+
+	public void _index_(long index, long value) {
+		set(index, value);
+	}
+
+	public long get(long index) {
+		long position = position(index);
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) position & CHUNK_MASK);
+	}
+
+	public void set(long index, long value) {
+		long position = position(index);
+		chunks[(int) (position >>> CHUNK_SHIFT)].putLong((int) position & CHUNK_MASK, value);
+	}
+}
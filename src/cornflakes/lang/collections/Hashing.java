@@ -0,0 +1,45 @@
+package cornflakes.lang.collections;
+
+/**
+ * Table sizes and hash functions of the open addressing maps. Keys are
+ * spread with a multiplicative hash, so keys in a sequence do not cluster in
+ * neighbouring slots.
+ */
+final class Hashing {
+	static final float LOAD_FACTOR = 0.75f;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private Hashing() {
+	}
+
+	/**
+	 * @return the power of two table size which holds the given number of
+	 *         entries below the load factor
+	 */
+	static int tableSize(int expected) {
+		if (expected < 0) {
+			throw new IllegalArgumentException("Negative expected size: " + expected);
+		}
+
+		long needed = Math.max(2, (long) Math.ceil(expected / LOAD_FACTOR));
+		if (needed > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Too many entries: " + expected);
+		}
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	static int threshold(int capacity) {
+		return Math.min(capacity - 1, (int) Math.ceil(capacity * LOAD_FACTOR));
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) (h ^ (h >>> 16));
+	}
+}
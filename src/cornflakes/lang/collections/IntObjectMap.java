@@ -0,0 +1,250 @@
+package cornflakes.lang.collections;
+
+import java.util.Arrays;
+
+/**
+ * A map from ints to objects which keeps its keys in an int array and
+ * resolves collisions by linear probing, so keys are never boxed. Indexing a
+ * map with <code>map[key]</code> reads or puts a value; missing keys read
+ * null.
+ */
+public class IntObjectMap<V> {
+	private static final int DEFAULT_EXPECTED = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int threshold;
+	private int size;
+
+	// 0 marks a free slot, so the key 0 is kept outside of the table
+	private boolean hasZeroKey;
+	private V zeroValue;
+
+	public IntObjectMap() {
+		this(DEFAULT_EXPECTED);
+	}
+
+	/**
+	 * @param expected
+	 *            the number of entries the map holds without growing
+	 */
+	public IntObjectMap(int expected) {
+		allocate(Hashing.tableSize(expected));
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		threshold = Hashing.threshold(capacity);
+	}
+
+	public V _index_(int key) {
+		return get(key);
+	}
+
+	public void _index_(int key, V value) {
+		put(key, value);
+	}
+
+	/**
+	 * @return the value of the key, or null if it has none
+	 */
+	public V get(int key) {
+		return getOrDefault(key, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getOrDefault(int key, V defaultValue) {
+		if (key == 0) {
+			return hasZeroKey ? zeroValue : defaultValue;
+		}
+
+		int slot = find(key);
+		return slot == -1 ? defaultValue : (V) values[slot];
+	}
+
+	public boolean containsKey(int key) {
+		return key == 0 ? hasZeroKey : find(key) != -1;
+	}
+
+	/**
+	 * @return the previous value of the key, or null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (key == 0) {
+			V old = zeroValue;
+			hasZeroKey = true;
+			zeroValue = value;
+			return old;
+		}
+
+		int slot = Hashing.hash(key) & mask;
+		int current;
+		while ((current = keys[slot]) != 0) {
+			if (current == key) {
+				V old = (V) values[slot];
+				values[slot] = value;
+				return old;
+			}
+			slot = slot + 1 & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size >= threshold) {
+			rehash(keys.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value the key had, or null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		if (key == 0) {
+			V old = zeroValue;
+			hasZeroKey = false;
+			zeroValue = null;
+			return old;
+		}
+
+		int slot = find(key);
+		if (slot == -1) {
+			return null;
+		}
+
+		V old = (V) values[slot];
+		shift(slot);
+		size--;
+		return old;
+	}
+
+	public int size() {
+		return hasZeroKey ? size + 1 : size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		size = 0;
+		hasZeroKey = false;
+		zeroValue = null;
+	}
+
+	public int[] keys() {
+		int[] result = new int[size()];
+		int i = 0;
+		if (hasZeroKey) {
+			result[i++] = 0;
+		}
+		for (int key : keys) {
+			if (key != 0) {
+				result[i++] = key;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the values in the order of {@link #keys()}
+	 */
+	public Object[] values() {
+		Object[] result = new Object[size()];
+		int i = 0;
+		if (hasZeroKey) {
+			result[i++] = zeroValue;
+		}
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				result[i++] = values[slot];
+			}
+		}
+		return result;
+	}
+
+	private int find(int key) {
+		int slot = Hashing.hash(key) & mask;
+		int current;
+		while ((current = keys[slot]) != 0) {
+			if (current == key) {
+				return slot;
+			}
+			slot = slot + 1 & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees a slot by moving back the entries after it which would no longer
+	 * be found past the free slot.
+	 */
+	private void shift(int slot) {
+		while (true) {
+			int last = slot;
+			slot = slot + 1 & mask;
+
+			int current;
+			while (true) {
+				if ((current = keys[slot]) == 0) {
+					keys[last] = 0;
+					values[last] = null;
+					return;
+				}
+
+				// the entry can move back if the free slot lies between its
+				// ideal slot and its current one
+				int ideal = Hashing.hash(current) & mask;
+				if (last <= slot ? last >= ideal || ideal > slot : last >= ideal && ideal > slot) {
+					break;
+				}
+				slot = slot + 1 & mask;
+			}
+
+			keys[last] = current;
+			values[last] = values[slot];
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key != 0) {
+				int slot = Hashing.hash(key) & mask;
+				while (keys[slot] != 0) {
+					slot = slot + 1 & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{");
+		if (hasZeroKey) {
+			str.append("0=").append(zeroValue);
+		}
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				if (str.length() > 1) {
+					str.append(", ");
+				}
+				str.append(keys[slot]).append('=').append(values[slot]);
+			}
+		}
+		return str.append('}').toString();
+	}
+}
@@ -0,0 +1,166 @@
+package cornflakes.lang.collections;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of longs, stored in a long array without boxing. Indexing a
+ * list with <code>list[i]</code> reads or replaces an element.
+ */
+public class LongList {
+	private static final int DEFAULT_CAPACITY = 10;
+
+	private long[] elements;
+	private int size;
+
+	public LongList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongList(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Negative capacity: " + capacity);
+		}
+		elements = new long[capacity];
+	}
+
+	public long _index_(int index) {
+		return get(index);
+	}
+
+	public void _index_(int index, long value) {
+		set(index, value);
+	}
+
+	public long get(int index) {
+		checkIndex(index);
+		return elements[index];
+	}
+
+	/**
+	 * @return the element which was replaced
+	 */
+	public long set(int index, long value) {
+		checkIndex(index);
+		long old = elements[index];
+		elements[index] = value;
+		return old;
+	}
+
+	public void add(long value) {
+		if (size == elements.length) {
+			grow(size + 1);
+		}
+		elements[size++] = value;
+	}
+
+	public void add(int index, long value) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		if (size == elements.length) {
+			grow(size + 1);
+		}
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		elements[index] = value;
+		size++;
+	}
+
+	/**
+	 * @return the element which was removed
+	 */
+	public long removeAt(int index) {
+		checkIndex(index);
+		long old = elements[index];
+		System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+		size--;
+		return old;
+	}
+
+	public int indexOf(long value) {
+		for (int i = 0; i < size; i++) {
+			if (elements[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(long value) {
+		return indexOf(value) != -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public void ensureCapacity(int capacity) {
+		if (capacity > elements.length) {
+			grow(capacity);
+		}
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	private void grow(int capacity) {
+		int length = Math.max(capacity, elements.length + (elements.length >> 1) + 1);
+		elements = Arrays.copyOf(elements, length);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LongList)) {
+			return false;
+		}
+
+		LongList other = (LongList) obj;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != other.elements[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + Long.hashCode(elements[i]);
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				str.append(", ");
+			}
+			str.append(elements[i]);
+		}
+		return str.append(']').toString();
+	}
+}